@@ -2,17 +2,37 @@ package coordinates;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import coordinates.Coord;
 
 public class Coordinates {
+    /* Directions, in the order getNeighbors lists them. */
+    public static final int MINUS_X = 0;
+    public static final int MINUS_Y = 1;
+    public static final int PLUS_X = 2;
+    public static final int PLUS_Y = 3;
+    public static final int NUM_DIRECTIONS = 4;
+    private static final int[] DIRECTION_X = { -1, 0, 1, 0 };
+    private static final int[] DIRECTION_Y = { 0, -1, 0, 1 };
+
     private static Coord[][] allCoordinates;
     private static int size;
     private static boolean isSet = false;
 
+    /*
+     * Per-square tables, built once so lookups never allocate or throw. Entries
+     * for directions that leave the board are null (or empty rays).
+     */
+    private static List<Coord>[][] neighbors;
+    private static Coord[][][] neighborInDirection;
+    private static Coord[][][] sandwichInDirection; // two squares away
+    private static Coord[][][][] rays; // every square in a direction, nearest first
+
     // Sets all coords, should ONLY BE called once.
+    @SuppressWarnings({ "unchecked", "rawtypes" })
     public static void setAllCoordinates(int max) {
         if (!isSet) {
             size = max;
@@ -22,6 +42,32 @@ public class Coordinates {
                     allCoordinates[i][j] = new Coord(i, j);
                 }
             }
+
+            neighbors = new List[max][max];
+            neighborInDirection = new Coord[max][max][NUM_DIRECTIONS];
+            sandwichInDirection = new Coord[max][max][NUM_DIRECTIONS];
+            rays = new Coord[max][max][NUM_DIRECTIONS][];
+            for (int i = 0; i < max; i++) {
+                for (int j = 0; j < max; j++) {
+                    List<Coord> adjacent = new ArrayList<>();
+                    for (int dir = 0; dir < NUM_DIRECTIONS; dir++) {
+                        List<Coord> ray = new ArrayList<>();
+                        int x = i + DIRECTION_X[dir];
+                        int y = j + DIRECTION_Y[dir];
+                        while (x >= 0 && x < max && y >= 0 && y < max) {
+                            ray.add(allCoordinates[x][y]);
+                            x += DIRECTION_X[dir];
+                            y += DIRECTION_Y[dir];
+                        }
+                        rays[i][j][dir] = ray.toArray(new Coord[ray.size()]);
+                        neighborInDirection[i][j][dir] = (ray.size() > 0) ? ray.get(0) : null;
+                        sandwichInDirection[i][j][dir] = (ray.size() > 1) ? ray.get(1) : null;
+                        if (ray.size() > 0)
+                            adjacent.add(ray.get(0));
+                    }
+                    neighbors[i][j] = Collections.unmodifiableList(adjacent);
+                }
+            }
             isSet = true;
         }
     }
@@ -30,6 +76,15 @@ public class Coordinates {
         return allCoordinates[i][j];
     }
 
+    // Coordinates can also be referred to by a single index, counting row by row.
+    public static Coord get(int index) {
+        return allCoordinates[index / size][index % size];
+    }
+
+    public static int getIndex(Coord c) {
+        return c.x * size + c.y;
+    }
+
     public static boolean isCorner(Coord c) {
         return isCorner(c.x, c.y);
     }
@@ -62,36 +117,54 @@ public class Coordinates {
         return Arrays.asList(get(0, 0), get(0, size - 1), get(size - 1, 0), get(size - 1, size - 1));
     }
 
+    // Returns the (unmodifiable) list of squares next to c.
     public static List<Coord> getNeighbors(Coord c) {
-        List<Coord> neighbors = new ArrayList<>();
-        for (int incr : Arrays.asList(-1, 1)) {
-            try {
-                neighbors.add(get(c.x + incr, c.y));
-            } catch (IndexOutOfBoundsException e) {
-            }
-            try {
-                neighbors.add(get(c.x, c.y + incr));
-            } catch (IndexOutOfBoundsException e) {
-            }
-        }
-        return neighbors;
+        return neighbors[c.x][c.y];
+    }
+
+    // Returns the square next to c in the given direction, or null if it is off the
+    // board.
+    public static Coord getNeighbor(Coord c, int direction) {
+        return neighborInDirection[c.x][c.y][direction];
+    }
+
+    /**
+     * Returns every square from c to the edge of the board in the given direction,
+     * nearest first. The array is shared, so it must not be modified.
+     */
+    public static Coord[] getRay(Coord c, int direction) {
+        return rays[c.x][c.y][direction];
+    }
+
+    // Returns the direction going from "from" to "to", assuming they are in the same
+    // row or column, or -1 if they are not.
+    public static int getDirection(Coord from, Coord to) {
+        if (from.x == to.x && from.y != to.y)
+            return (to.y < from.y) ? MINUS_Y : PLUS_Y;
+        if (from.y == to.y && from.x != to.x)
+            return (to.x < from.x) ? MINUS_X : PLUS_X;
+        return -1;
     }
 
     // Returns the coordinate with which a sandwich would be made around "middle",
     // using "front".
     public static Coord getSandwichCoord(Coord front, Coord middle) throws CoordinateDoesNotExistException {
-        int xDiff = front.x - middle.x;
-        int yDiff = front.y - middle.y;
-        if (xDiff * yDiff != 0 || xDiff + yDiff == 0) {
+        int direction = getDirection(front, middle);
+        if (direction < 0 || front.maxDifference(middle) != 1) {
             throw new CoordinateDoesNotExistException(
                     "These coordinates are not adjacent: " + front.toString() + " and " + middle.toString());
         }
-        try {
-            Coord back = get(middle.x - xDiff, middle.y - yDiff);
-            return back;
-        } catch (IndexOutOfBoundsException e) {
+        Coord back = getSandwichCoord(front, direction);
+        if (back == null) {
             throw new CoordinateDoesNotExistException("The sandwich coordinate would be off the board.");
         }
+        return back;
+    }
+
+    // Returns the coordinate with which a sandwich would be made around the neighbor
+    // of "front" in the given direction, or null if it would be off the board.
+    public static Coord getSandwichCoord(Coord front, int direction) {
+        return sandwichInDirection[front.x][front.y][direction];
     }
 
     // Given a coordinate, returns the distance between it and the closest corner.
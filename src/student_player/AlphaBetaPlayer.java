@@ -0,0 +1,48 @@
+package student_player;
+
+import boardgame.Move;
+import tablut.TablutBoardState;
+import tablut.TablutPlayer;
+
+/**
+ * Plays with AlphaBetaSearch, on every core through LazySmpSearch, so that it
+ * can be pitted against the Monte Carlo StudentPlayer.
+ */
+public class AlphaBetaPlayer extends TablutPlayer {
+    private static final int TABLE_SIZE_MB = 128; // of the 520 MB the clients are given
+    private static final int NUM_SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final TimeManager timeManager = new TimeManager();
+    private LazySmpSearch search; // created on the first move, see initialize
+
+    public AlphaBetaPlayer() {
+        this("AlphaBetaPlayer");
+    }
+
+    public AlphaBetaPlayer(String name) {
+        super(name);
+    }
+
+    @Override
+    public Move chooseMove(TablutBoardState boardState) {
+        long startTime = System.currentTimeMillis();
+        initialize();
+        timeManager.startTurn(boardState, startTime);
+        Move move = search.search(boardState, timeManager.getDeadline());
+        timeManager.endTurn();
+        return move;
+    }
+
+    /**
+     * Creates the search, with its transposition table and threads, and maps the
+     * endgame tables on the first move rather than in the constructor, which
+     * runs before the game starts.
+     */
+    private void initialize() {
+        if (search != null) {
+            return;
+        }
+        search = new LazySmpSearch(TABLE_SIZE_MB, NUM_SEARCH_THREADS);
+        search.setTablebase(EndgameTablebase.load(EndgameTablebase.DEFAULT_DIRECTORY));
+    }
+}
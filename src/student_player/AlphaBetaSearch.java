@@ -0,0 +1,522 @@
+package student_player;
+
+import boardgame.Board;
+import boardgame.Move;
+import coordinates.Coord;
+import coordinates.Coordinates;
+import tablut.TablutBoardState;
+import tablut.TablutMove;
+
+/**
+ * Iterative-deepening negamax alpha-beta search with principal variation search
+ * and aspiration windows. Positions are explored with make/unmake on a single
+ * copy of the searched state, and moves are generated into per-ply buffers, so
+ * the search allocates nothing once started. Results are kept in a
+ * transposition table, which cuts off positions reached again through other
+ * move orders and supplies the best move to try first everywhere else. The
+ * other moves are ordered by MoveOrderer. Leaves are not evaluated until a
+ * quiescence search has played out the captures and king escapes pending
+ * there.
+ *
+ * The deadline is checked every few thousand nodes. When it passes, the
+ * iteration in progress is abandoned and the best move of the last completed
+ * depth is returned.
+ */
+public class AlphaBetaSearch {
+    /** Score of a won position, minus the number of plies it takes to win. */
+    public static final int WIN_SCORE = 1000000;
+    public static final int MAX_DEPTH = 64;
+    public static final int MAX_QUIESCENCE_DEPTH = 16;
+    public static final int DEFAULT_TABLE_SIZE_MB = 64;
+
+    private static final int MAX_PLY = MAX_DEPTH + MAX_QUIESCENCE_DEPTH;
+    private static final int INFINITY = WIN_SCORE + 1;
+    // Scores beyond this are forced results, found by the search or in the
+    // endgame tables.
+    private static final int WIN_THRESHOLD = WIN_SCORE - MAX_PLY - EndgameTablebase.MAX_DISTANCE;
+    // A capture is skipped in quiescence when even this much more than the
+    // captured material cannot raise the score to alpha.
+    private static final int DELTA_MARGIN = 200;
+    private static final int ASPIRATION_WINDOW = 50;
+    private static final int DEADLINE_CHECK_MASK = 0xFFF; // check every 4096 nodes
+
+    private final TranspositionTable table;
+    private EndgameTablebase tablebase;
+    private final int depthOffset;
+    private final boolean agesTable;
+    private final MoveOrderer orderer = new MoveOrderer(MAX_PLY);
+    private final int[][] moveBuffers = new int[MAX_PLY + 1][TablutBoardState.MAX_LEGAL_MOVES];
+    private final int[] rootMoves = new int[TablutBoardState.MAX_LEGAL_MOVES];
+    private int rootMoveCount;
+    private int rootBestMove;
+    private volatile long deadline; // set to 0 by stop
+    private boolean aborted;
+    private long nodes;
+    private int completedDepth;
+    private int bestScore;
+
+    public AlphaBetaSearch() {
+        this(new TranspositionTable(DEFAULT_TABLE_SIZE_MB));
+    }
+
+    /**
+     * @param table
+     *            table to keep results in. It is not cleared between searches, so
+     *            what was learned on one move helps on the next.
+     */
+    public AlphaBetaSearch(TranspositionTable table) {
+        this.table = table;
+        this.depthOffset = 0;
+        this.agesTable = true;
+    }
+
+    /**
+     * Search sharing its table with others, for LazySmpSearch. Its iterations
+     * start depthOffset deeper than usual so that it runs out of step with the
+     * other searches, and it leaves aging the table to the caller.
+     */
+    AlphaBetaSearch(TranspositionTable table, int depthOffset) {
+        this.table = table;
+        this.depthOffset = depthOffset;
+        this.agesTable = false;
+    }
+
+    /**
+     * Searches the given state deeper and deeper until the deadline (in
+     * currentTimeMillis terms) or a forced result is found, and returns the best
+     * move of the last completed depth. The state is not modified.
+     */
+    public Move search(TablutBoardState boardState, long deadline) {
+        return search(boardState, deadline, MAX_DEPTH);
+    }
+
+    /**
+     * Same as search(boardState, deadline), but stops after the given depth.
+     */
+    public Move search(TablutBoardState boardState, long deadline, int maxDepth) {
+        TablutBoardState state = (TablutBoardState) boardState.clone();
+        this.deadline = deadline;
+        aborted = false;
+        nodes = 0;
+        completedDepth = 0;
+        bestScore = 0;
+        if (agesTable) {
+            table.newSearch();
+        }
+        orderer.newSearch();
+
+        rootMoveCount = state.getAllLegalMoves(rootMoves);
+        if (rootMoveCount == 0) {
+            return null;
+        }
+        int bestMove = rootMoves[0];
+        rootBestMove = bestMove;
+        long key = state.getHashKeyWithTurnBucket();
+        long entry = table.probe(key);
+        if (entry != 0 && TranspositionTable.getMove(entry) != TranspositionTable.NO_MOVE) {
+            rootBestMove = TranspositionTable.getMove(entry); // only used to order the moves
+        }
+
+        for (int depth = 1 + depthOffset; depth <= Math.min(maxDepth, MAX_DEPTH); depth++) {
+            int score = searchWithAspiration(state, depth, bestScore);
+            if (aborted) {
+                break;
+            }
+            bestMove = rootBestMove;
+            bestScore = score;
+            completedDepth = depth;
+            table.store(key, bestMove, depth, TranspositionTable.EXACT, scoreToTable(score, 0));
+            if (Math.abs(score) >= WIN_THRESHOLD || System.currentTimeMillis() >= deadline) {
+                break; // the result is forced, or there is no time for another depth
+            }
+        }
+        return TablutMove.fromPacked(bestMove);
+    }
+
+    /**
+     * Makes the search score positions found in the given endgame tables from
+     * them instead of searching them, or stop doing so if tablebase is null.
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = (tablebase == null || tablebase.isEmpty()) ? null : tablebase;
+    }
+
+    /**
+     * Makes a search running on another thread give up at its next deadline
+     * check, as if its deadline had passed.
+     */
+    public void stop() {
+        deadline = 0;
+    }
+
+    /**
+     * @return the deepest depth the last search completed
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return the score of the last search's move at its completed depth, from the
+     *         point of view of the player to move
+     */
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * @return the number of positions the last search visited
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    // Searches a small window around the previous depth's score first, widening
+    // the side that failed until the score falls inside. The first depth has no
+    // previous score to go on.
+    private int searchWithAspiration(TablutBoardState state, int depth, int guess) {
+        if (completedDepth == 0) {
+            return searchRoot(state, depth, -INFINITY, INFINITY);
+        }
+        int alpha = guess - ASPIRATION_WINDOW;
+        int beta = guess + ASPIRATION_WINDOW;
+        while (true) {
+            int score = searchRoot(state, depth, alpha, beta);
+            if (aborted) {
+                return score;
+            }
+            if (score <= alpha) {
+                alpha = -INFINITY;
+            } else if (score >= beta) {
+                beta = INFINITY;
+            } else {
+                return score;
+            }
+        }
+    }
+
+    // Searches every root move, the best one from the previous depth first, and
+    // leaves the best one found in rootBestMove.
+    private int searchRoot(TablutBoardState state, int depth, int alpha, int beta) {
+        orderer.scoreMoves(state, rootMoves, rootMoveCount, 0, rootBestMove);
+        int best = -INFINITY;
+        for (int i = 0; i < rootMoveCount; i++) {
+            int move = orderer.pickNext(rootMoves, rootMoveCount, 0, i);
+            long undo = state.makeMove(move);
+            int score;
+            if (i == 0) {
+                score = -negamax(state, depth - 1, 1, -beta, -alpha);
+            } else {
+                score = -negamax(state, depth - 1, 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -negamax(state, depth - 1, 1, -beta, -alpha);
+                }
+            }
+            state.unmakeMove(undo);
+            if (aborted) {
+                return best;
+            }
+            if (score > best) {
+                best = score;
+                rootBestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Negamax with principal variation search: the first move is searched with
+     * the full window, and the others with a null window that only proves they
+     * are no better, re-searched in full when that fails.
+     */
+    private int negamax(TablutBoardState state, int depth, int ply, int alpha, int beta) {
+        if ((++nodes & DEADLINE_CHECK_MASK) == 0 && System.currentTimeMillis() >= deadline) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (state.gameOver()) {
+            return terminalScore(state, ply);
+        }
+        if (tablebase != null) {
+            int distance = tablebase.probe(state);
+            if (distance != EndgameTablebase.NOT_FOUND) {
+                return tablebaseScore(distance, ply);
+            }
+        }
+        if (depth == 0) {
+            return quiesce(state, ply, 0, alpha, beta);
+        }
+
+        long key = state.getHashKeyWithTurnBucket();
+        long entry = table.probe(key);
+        int tableMove = TranspositionTable.NO_MOVE;
+        if (entry != 0) {
+            tableMove = TranspositionTable.getMove(entry);
+            if (TranspositionTable.getDepth(entry) >= depth) {
+                int score = scoreFromTable(TranspositionTable.getScore(entry), ply);
+                int bound = TranspositionTable.getBound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int[] moves = moveBuffers[ply];
+        int count = state.getAllLegalMoves(moves);
+        orderer.scoreMoves(state, moves, count, ply, tableMove);
+        int best = -INFINITY;
+        int bestMove = TranspositionTable.NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            int move = orderer.pickNext(moves, count, ply, i);
+            long undo = state.makeMove(move);
+            int score;
+            if (i == 0) {
+                score = -negamax(state, depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                score = -negamax(state, depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -negamax(state, depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            state.unmakeMove(undo);
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    bestMove = move;
+                    if (alpha >= beta) {
+                        orderer.recordCutoff(move, ply, i, depth);
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = (best <= originalAlpha) ? TranspositionTable.UPPER_BOUND
+                : (best >= beta) ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+        table.store(key, bestMove, depth, bound, scoreToTable(best, ply));
+        return best;
+    }
+
+    /**
+     * Quiescence search, so that positions are only evaluated once they are
+     * quiet. Only captures and king moves are searched: escapes to a corner, the
+     * blocks against them, and muscovite moves threatening the king. Otherwise the
+     * player to move can stand pat on the static evaluation, unless the king is
+     * about to escape.
+     */
+    private int quiesce(TablutBoardState state, int ply, int quiescencePly, int alpha, int beta) {
+        if ((++nodes & DEADLINE_CHECK_MASK) == 0 && System.currentTimeMillis() >= deadline) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (state.gameOver()) {
+            return terminalScore(state, ply);
+        }
+        if (tablebase != null) {
+            int distance = tablebase.probe(state);
+            if (distance != EndgameTablebase.NOT_FOUND) {
+                return tablebaseScore(distance, ply);
+            }
+        }
+        if (ply >= MAX_PLY || quiescencePly >= MAX_QUIESCENCE_DEPTH) {
+            return MyTools.evaluate(state);
+        }
+
+        Coord king = state.getKingPosition();
+        boolean swedesToMove = state.getTurnPlayer() == TablutBoardState.SWEDE;
+        boolean kingCanEscape = MyTools.countEscapeRoutes(state, king) > 0;
+        if (swedesToMove && kingCanEscape) {
+            return WIN_SCORE - (ply + 1); // the king moves to the corner
+        }
+
+        int best;
+        int standPat = 0;
+        if (kingCanEscape) {
+            best = -(WIN_SCORE - (ply + 2)); // every move but a block lets the king out
+        } else {
+            standPat = MyTools.evaluate(state);
+            if (standPat >= beta) {
+                return standPat;
+            }
+            best = standPat;
+            alpha = Math.max(alpha, standPat);
+        }
+
+        int[] moves = moveBuffers[ply];
+        int captureCount = state.getCaptureMoves(moves);
+        int count = captureCount;
+        if (kingCanEscape) {
+            count = addBlockingMoves(state, king, moves, captureCount);
+        } else if (swedesToMove) {
+            count = addKingEscapeThreats(state, king, moves, captureCount);
+        } else if (quiescencePly == 0) {
+            count = addKingCaptureThreats(state, king, moves, captureCount);
+        }
+        orderer.scoreMoves(state, moves, count, ply, TranspositionTable.NO_MOVE);
+
+        int capturedValue = swedesToMove ? MyTools.MUSCOVITE_PIECE_VALUE : MyTools.SWEDE_PIECE_VALUE;
+        for (int i = 0; i < count; i++) {
+            int move = orderer.pickNext(moves, count, ply, i);
+            if (!kingCanEscape) {
+                // Delta pruning, never for moves next to the king, which may capture it.
+                int captures = state.getCaptureCount(move);
+                if (captures > 0 && standPat + captures * capturedValue + DELTA_MARGIN <= alpha
+                        && TablutMove.getPackedEnd(move).distance(king) != 1) {
+                    continue;
+                }
+            }
+            long undo = state.makeMove(move);
+            int score = -quiesce(state, ply + 1, quiescencePly + 1, -beta, -alpha);
+            state.unmakeMove(undo);
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // Adds the muscovite moves onto the king's open lines to a corner.
+    private static int addBlockingMoves(TablutBoardState state, Coord king, int[] moves, int captureCount) {
+        int count = captureCount;
+        for (int direction = 0; direction < Coordinates.NUM_DIRECTIONS; direction++) {
+            Coord[] ray = Coordinates.getRay(king, direction);
+            if (ray.length == 0 || !Coordinates.isCorner(ray[ray.length - 1])) {
+                continue;
+            }
+            int first = count;
+            for (Coord c : ray) {
+                if (!state.coordIsEmpty(c)) {
+                    count = first; // the line is closed already
+                    break;
+                }
+                count = state.getMovesTo(c, moves, count);
+            }
+            count = removeDuplicates(moves, captureCount, first, count);
+        }
+        return count;
+    }
+
+    // Adds the king moves to squares with an open line to a corner.
+    private static int addKingEscapeThreats(TablutBoardState state, Coord king, int[] moves, int captureCount) {
+        int count = captureCount;
+        for (int direction = 0; direction < Coordinates.NUM_DIRECTIONS; direction++) {
+            for (Coord c : Coordinates.getRay(king, direction)) {
+                if (!state.coordIsEmpty(c)) {
+                    break;
+                }
+                int move = TablutMove.pack(king, c, TablutBoardState.SWEDE);
+                if (MyTools.countEscapeRoutes(state, c) > 0 && !contains(moves, 0, captureCount, move)) {
+                    moves[count++] = move;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Adds the muscovite moves next to the king that leave it one move from
+    // being sandwiched. The king is safe from this in or beside the center.
+    private static int addKingCaptureThreats(TablutBoardState state, Coord king, int[] moves, int captureCount) {
+        if (Coordinates.isCenterOrNeighborCenter(king)) {
+            return captureCount;
+        }
+        int count = captureCount;
+        for (int direction = 0; direction < Coordinates.NUM_DIRECTIONS; direction++) {
+            Coord landing = Coordinates.getNeighbor(king, direction);
+            Coord opposite = Coordinates.getNeighbor(king, (direction + 2) % Coordinates.NUM_DIRECTIONS);
+            if (landing != null && opposite != null && state.coordIsEmpty(opposite)) {
+                int first = count;
+                count = state.getMovesTo(landing, moves, count);
+                count = removeDuplicates(moves, captureCount, first, count);
+            }
+        }
+        return count;
+    }
+
+    // Drops the moves from first to count-1 that are already among the first
+    // captureCount moves, and returns the new count.
+    private static int removeDuplicates(int[] moves, int captureCount, int first, int count) {
+        int kept = first;
+        for (int i = first; i < count; i++) {
+            if (!contains(moves, 0, captureCount, moves[i])) {
+                moves[kept++] = moves[i];
+            }
+        }
+        return kept;
+    }
+
+    private static boolean contains(int[] moves, int from, int to, int move) {
+        for (int i = from; i < to; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Win scores count plies from the root, but a table entry can be reached at
+    // any ply, so they are stored counting from the entry's position instead.
+    private static int scoreToTable(int score, int ply) {
+        if (score >= WIN_THRESHOLD) {
+            return score + ply;
+        } else if (score <= -(WIN_THRESHOLD)) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= WIN_THRESHOLD) {
+            return score - ply;
+        } else if (score <= -(WIN_THRESHOLD)) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    // Score of a position found in the endgame tables, from what probe returned.
+    private static int tablebaseScore(int distance, int ply) {
+        if (distance == EndgameTablebase.DRAW) {
+            return 0;
+        }
+        int score = WIN_SCORE - (ply + distance);
+        return (distance % 2 == 1) ? score : -score;
+    }
+
+    // Score of a finished game for the player to move. Quicker wins and slower
+    // losses score better.
+    private static int terminalScore(TablutBoardState state, int ply) {
+        int winner = state.getWinner();
+        if (winner == state.getTurnPlayer()) {
+            return WIN_SCORE - ply;
+        } else if (winner == Board.DRAW || winner == Board.NOBODY) {
+            return 0;
+        }
+        return -(WIN_SCORE - ply);
+    }
+}
@@ -0,0 +1,38 @@
+package student_player;
+
+import java.util.SplittableRandom;
+
+import tablut.TablutBoardState;
+
+/**
+ * Epsilon-greedy playout policy: with probability epsilon a uniformly random
+ * move, and otherwise a random capture if there is one. Captures come from
+ * TablutBoardState.getCaptureMoves, which only looks around the opponent's
+ * pieces, so a move is never tried on the board to see what it captures.
+ */
+public class CaptureFirstPolicy implements PlayoutPolicy {
+    public static final double DEFAULT_EPSILON = 0.1;
+
+    private final double epsilon;
+    private final int[] moves = new int[TablutBoardState.MAX_LEGAL_MOVES];
+
+    /**
+     * @param epsilon
+     *            probability of ignoring the captures, so that playouts still
+     *            see quiet moves in tactical positions
+     */
+    public CaptureFirstPolicy(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public int chooseMove(TablutBoardState boardState, SplittableRandom random) {
+        if (random.nextDouble() >= epsilon) {
+            int count = boardState.getCaptureMoves(moves);
+            if (count > 0) {
+                return moves[random.nextInt(count)];
+            }
+        }
+        return boardState.sampleRandomMove(random);
+    }
+}
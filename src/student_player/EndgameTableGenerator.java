@@ -0,0 +1,201 @@
+package student_player;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import coordinates.Coord;
+import coordinates.Coordinates;
+import tablut.TablutBoardState;
+
+/**
+ * Writes the tables EndgameTablebase reads, solving every position of a
+ * material configuration by retrograde analysis with the TablutBoardState
+ * rules. Rather than unmaking moves, which the rules do not support, each
+ * iteration looks forward from the positions still unsolved: iteration n marks
+ * as won in n plies (n odd) the positions with a move to a position lost in
+ * fewer plies, and as lost in n plies (n even) those whose every move leads to
+ * a position won in fewer. Positions a capture leads out of are looked up in
+ * the table of the smaller configuration, so configurations are solved from
+ * the fewest pieces up. Whatever is unsolved when nothing changes any more, or
+ * after MAX_DISTANCE plies that no game lasts, is a draw.
+ *
+ * Usage: EndgameTableGenerator [pieces] [directory], for every configuration
+ * with at most that many pieces besides the king (by default 2), written to
+ * EndgameTablebase.DEFAULT_DIRECTORY.
+ */
+public class EndgameTableGenerator {
+    private final byte[][][] solved; // distances of the configurations done so far
+    private final int[] moves = new int[TablutBoardState.MAX_LEGAL_MOVES];
+
+    public EndgameTableGenerator(int maxPieces) {
+        solved = new byte[maxPieces + 1][maxPieces + 1][];
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maxPieces = (args.length > 0) ? Integer.parseInt(args[0]) : 2;
+        String directory = (args.length > 1) ? args[1] : EndgameTablebase.DEFAULT_DIRECTORY;
+        if (maxPieces > EndgameTablebase.MAX_PIECES) {
+            throw new IllegalArgumentException("At most " + EndgameTablebase.MAX_PIECES + " pieces are supported.");
+        }
+
+        EndgameTableGenerator generator = new EndgameTableGenerator(maxPieces);
+        for (int pieces = 1; pieces <= maxPieces; pieces++) {
+            for (int swedes = 0; swedes < pieces; swedes++) {
+                long start = System.currentTimeMillis();
+                generator.generate(swedes, pieces - swedes);
+                File file = new File(directory, EndgameTablebase.getFileName(swedes, pieces - swedes));
+                generator.write(file, swedes, pieces - swedes);
+                System.out.println("Wrote " + file + " in " + (System.currentTimeMillis() - start) / 1000 + " s");
+            }
+        }
+    }
+
+    /**
+     * Solves the configuration with the given numbers of swedes (besides the
+     * king) and muscovites. Every smaller configuration must be solved already.
+     */
+    public void generate(int swedes, int muscovites) {
+        int size = (int) EndgameTablebase.getTableSize(swedes, muscovites);
+        byte[] distances = new byte[size];
+        solved[swedes][muscovites] = distances;
+
+        // The positions left to solve: legal ones that are not already over.
+        BitSet unsolved = new BitSet(size);
+        for (int index = 0; index < size; index++) {
+            TablutBoardState state = decode(index, swedes, muscovites);
+            if (state != null && !state.gameOver()) {
+                unsolved.set(index);
+            }
+        }
+
+        int lastChange = 0;
+        for (int n = 1; n <= EndgameTablebase.MAX_DISTANCE && n - lastChange <= 2; n++) {
+            int count = 0;
+            for (int index = unsolved.nextSetBit(0); index >= 0; index = unsolved.nextSetBit(index + 1)) {
+                TablutBoardState state = decode(index, swedes, muscovites);
+                if (n % 2 == 1 ? isWin(state, n) : isLoss(state, n)) {
+                    distances[index] = (byte) n;
+                    unsolved.clear(index);
+                    count++;
+                }
+            }
+            if (count > 0) {
+                lastChange = n;
+            }
+            System.out.println(swedes + "s" + muscovites + "m: " + count + " positions in " + n + " plies");
+        }
+    }
+
+    // Whether the side to move has a move to a position lost in fewer than n
+    // plies. Losses are even, so a loss found in this iteration can't be one.
+    private boolean isWin(TablutBoardState state, int n) {
+        int mover = state.getTurnPlayer();
+        int count = state.getAllLegalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            long undo = state.makeMove(moves[i]);
+            int distance = state.gameOver() ? -1 : lookUp(state);
+            boolean won = (distance < 0) ? state.getWinner() == mover
+                    : distance > 0 && distance % 2 == 0 && distance < n;
+            state.unmakeMove(undo);
+            if (won) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether every move of the side to move leads to a position won in fewer
+    // than n plies.
+    private boolean isLoss(TablutBoardState state, int n) {
+        int opponent = 1 - state.getTurnPlayer();
+        int count = state.getAllLegalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            long undo = state.makeMove(moves[i]);
+            int distance = state.gameOver() ? -1 : lookUp(state);
+            boolean lost = (distance < 0) ? state.getWinner() == opponent : distance % 2 == 1 && distance < n;
+            state.unmakeMove(undo);
+            if (!lost) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Distance of a position that is not over, from the table of its pieces.
+    private int lookUp(TablutBoardState state) {
+        int swedes = state.getNumberPlayerPieces(TablutBoardState.SWEDE) - 1;
+        int muscovites = state.getNumberPlayerPieces(TablutBoardState.MUSCOVITE);
+        return solved[swedes][muscovites][(int) EndgameTablebase.getIndex(state)];
+    }
+
+    // The position at an index, with the muscovites to move first, or null if the
+    // index is not a legal position.
+    private static TablutBoardState decode(long index, int swedes, int muscovites) {
+        int[] king = new int[1];
+        int[] swedeSquares = new int[swedes];
+        int[] muscoviteSquares = new int[muscovites];
+        int turnPlayer = EndgameTablebase.decodeIndex(index, king, swedeSquares, swedes, muscoviteSquares,
+                muscovites);
+        boolean[] taken = new boolean[EndgameTablebase.NUM_SQUARES];
+        taken[king[0]] = true;
+        for (int square : swedeSquares) {
+            if (taken[square] || !isSoldierSquare(square)) {
+                return null;
+            }
+            taken[square] = true;
+        }
+        for (int square : muscoviteSquares) {
+            if (taken[square] || !isSoldierSquare(square)) {
+                return null;
+            }
+            taken[square] = true;
+        }
+        return new TablutBoardState(Coordinates.get(king[0]),
+                Arrays.asList(EndgameTablebase.toCoords(swedeSquares, swedes)),
+                Arrays.asList(EndgameTablebase.toCoords(muscoviteSquares, muscovites)), turnPlayer, 0);
+    }
+
+    // Pieces other than the king may not stand on the center or the corners.
+    private static boolean isSoldierSquare(int square) {
+        Coord c = Coordinates.get(square);
+        return !Coordinates.isCenter(c) && !Coordinates.isCorner(c);
+    }
+
+    /**
+     * Writes a solved configuration in the format EndgameTablebase reads.
+     */
+    public void write(File file, int swedes, int muscovites) throws IOException {
+        byte[] distances = solved[swedes][muscovites];
+        int longest = 1;
+        for (byte distance : distances) {
+            longest = Math.max(longest, distance);
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(longest);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(EndgameTablebase.MAGIC);
+            out.writeInt(swedes);
+            out.writeInt(muscovites);
+            out.writeInt(bits);
+            long buffer = 0; // bits not written yet, in the low bufferBits
+            int bufferBits = 0;
+            for (byte distance : distances) {
+                buffer = (buffer << bits) | distance;
+                bufferBits += bits;
+                while (bufferBits >= 8) {
+                    bufferBits -= 8;
+                    out.writeByte((int) (buffer >>> bufferBits));
+                }
+            }
+            if (bufferBits > 0) {
+                out.writeByte((int) (buffer << (8 - bufferBits)));
+            }
+            out.writeByte(0); // padding, see EndgameTablebase.getEntry
+        }
+    }
+}
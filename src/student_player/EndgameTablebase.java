@@ -0,0 +1,240 @@
+package student_player;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import coordinates.Coord;
+import coordinates.Coordinates;
+import tablut.TablutBoardState;
+import tablut.TablutBoardState.Piece;
+
+/**
+ * Endgame tables for positions with the king and a few other pieces, written
+ * by EndgameTableGenerator and read straight from memory-mapped files, one per
+ * material configuration (number of swedes besides the king, and of
+ * muscovites).
+ *
+ * A position is found by a perfect hash of its pieces: the side to move, the
+ * king's square, and the sets of swede and muscovite squares, each ranked in
+ * the combinatorial number system. Not every index is a legal position, but no
+ * two positions share one. The table holds, for every index, the number of
+ * plies to the end of the game with perfect play, bit-packed to as few bits as
+ * the longest one needs: 0 for a draw, odd for a win of the side to move and
+ * even for a loss. A game is a draw once MAX_TURNS are played, so probe only
+ * reports results that come before that.
+ */
+public class EndgameTablebase {
+    public static final String DEFAULT_DIRECTORY = "data";
+    /** Largest number of pieces besides the king that tables are looked for. */
+    public static final int MAX_PIECES = 3;
+    /** Longest game there can be, so the longest win worth storing. */
+    public static final int MAX_DISTANCE = 2 * (TablutBoardState.MAX_TURNS + 1);
+    /** Returned by probe for positions without a table. */
+    public static final int NOT_FOUND = -1;
+    public static final int DRAW = 0;
+
+    static final int MAGIC = 0x5442454E; // "TBEN"
+    static final int HEADER_SIZE = 16; // magic, swedes, muscovites, bits per entry
+    static final int NUM_SQUARES = TablutBoardState.BOARD_SIZE * TablutBoardState.BOARD_SIZE;
+
+    private static final long[][] BINOMIALS = new long[NUM_SQUARES + 1][MAX_PIECES + 1];
+    static {
+        Coordinates.setAllCoordinates(TablutBoardState.BOARD_SIZE); // squares are indexed before any state exists
+        for (int n = 0; n <= NUM_SQUARES; n++) {
+            BINOMIALS[n][0] = 1;
+            for (int k = 1; k <= MAX_PIECES; k++) {
+                BINOMIALS[n][k] = (n == 0) ? 0 : BINOMIALS[n - 1][k - 1] + BINOMIALS[n - 1][k];
+            }
+        }
+    }
+
+    private final MappedByteBuffer[][] tables = new MappedByteBuffer[MAX_PIECES + 1][MAX_PIECES + 1];
+    private final int[][] bitsPerEntry = new int[MAX_PIECES + 1][MAX_PIECES + 1];
+
+    /**
+     * Maps every table found in the given directory. Missing tables are simply not
+     * probed.
+     */
+    public static EndgameTablebase load(String directory) {
+        EndgameTablebase tablebase = new EndgameTablebase();
+        for (int swedes = 0; swedes < MAX_PIECES; swedes++) {
+            for (int muscovites = 1; swedes + muscovites <= MAX_PIECES; muscovites++) {
+                tablebase.loadTable(new File(directory, getFileName(swedes, muscovites)), swedes, muscovites);
+            }
+        }
+        return tablebase;
+    }
+
+    private void loadTable(File file, int swedes, int muscovites) {
+        if (!file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int bits = buffer.getInt(12);
+            long expectedSize = HEADER_SIZE + (getTableSize(swedes, muscovites) * bits + 7) / 8 + 1;
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == swedes && buffer.getInt(8) == muscovites
+                    && bits > 0 && bits <= 8 && buffer.capacity() >= expectedSize) {
+                tables[swedes][muscovites] = buffer; // the mapping outlives the channel
+                bitsPerEntry[swedes][muscovites] = bits;
+            }
+        } catch (IOException e) {
+            // leave the table out
+        }
+    }
+
+    /**
+     * @return whether any table was found
+     */
+    public boolean isEmpty() {
+        for (MappedByteBuffer[] row : tables) {
+            for (MappedByteBuffer table : row) {
+                if (table != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks the given position up.
+     *
+     * @return NOT_FOUND if there is no table for its pieces, DRAW if neither side
+     *         can force a win before the game ends, and otherwise the number of
+     *         plies the game lasts with perfect play: odd if the side to move
+     *         wins, even if it loses
+     */
+    public int probe(TablutBoardState state) {
+        if (state.gameOver()) {
+            return NOT_FOUND;
+        }
+        int swedes = state.getNumberPlayerPieces(TablutBoardState.SWEDE) - 1;
+        int muscovites = state.getNumberPlayerPieces(TablutBoardState.MUSCOVITE);
+        if (swedes + muscovites > MAX_PIECES || muscovites == 0 || tables[swedes][muscovites] == null) {
+            return NOT_FOUND;
+        }
+        int distance = getEntry(tables[swedes][muscovites], bitsPerEntry[swedes][muscovites], getIndex(state));
+        return (distance <= getRemainingPlies(state)) ? distance : DRAW;
+    }
+
+    /**
+     * @return a packed move that wins the given position as fast as possible, or
+     *         TranspositionTable.NO_MOVE if it is not a win in the tables
+     */
+    public int getWinningMove(TablutBoardState state, int[] moveBuffer) {
+        int distance = probe(state);
+        if (distance == NOT_FOUND || distance % 2 == 0) {
+            return TranspositionTable.NO_MOVE;
+        }
+        int mover = state.getTurnPlayer();
+        int count = state.getAllLegalMoves(moveBuffer);
+        for (int i = 0; i < count; i++) {
+            long undo = state.makeMove(moveBuffer[i]);
+            boolean wins = state.gameOver() ? state.getWinner() == mover
+                    : distance > 1 && probe(state) == distance - 1;
+            state.unmakeMove(undo);
+            if (wins) {
+                return moveBuffer[i];
+            }
+        }
+        return TranspositionTable.NO_MOVE;
+    }
+
+    /**
+     * @return the number of plies that can still be played before the game is a
+     *         draw: it ends after the swedes' move of turn MAX_TURNS
+     */
+    public static int getRemainingPlies(TablutBoardState state) {
+        int plies = 2 * (TablutBoardState.MAX_TURNS + 1 - state.getTurnNumber());
+        return (state.getTurnPlayer() == TablutBoardState.SWEDE) ? plies - 1 : plies;
+    }
+
+    static String getFileName(int swedes, int muscovites) {
+        return "endgame_" + swedes + "s" + muscovites + "m.bin";
+    }
+
+    /**
+     * @return the number of indexes in the table of the given configuration
+     */
+    static long getTableSize(int swedes, int muscovites) {
+        return 2L * NUM_SQUARES * BINOMIALS[NUM_SQUARES][swedes] * BINOMIALS[NUM_SQUARES][muscovites];
+    }
+
+    /**
+     * @return the index of the given position in the table of its configuration
+     */
+    static long getIndex(TablutBoardState state) {
+        int king = 0;
+        long swedeRank = 0;
+        long muscoviteRank = 0;
+        int swedes = 0;
+        int muscovites = 0;
+        for (int square = 0; square < NUM_SQUARES; square++) {
+            Piece piece = state.getPieceAt(Coordinates.get(square));
+            if (piece == Piece.KING) {
+                king = square;
+            } else if (piece == Piece.WHITE) {
+                swedeRank += BINOMIALS[square][++swedes];
+            } else if (piece == Piece.BLACK) {
+                muscoviteRank += BINOMIALS[square][++muscovites];
+            }
+        }
+        long index = state.getTurnPlayer() * NUM_SQUARES + king;
+        index = index * BINOMIALS[NUM_SQUARES][swedes] + swedeRank;
+        return index * BINOMIALS[NUM_SQUARES][muscovites] + muscoviteRank;
+    }
+
+    /**
+     * Inverse of getIndex for a configuration: fills king (one square), swedes and
+     * muscovites with the squares of the position at the index, and returns the
+     * side to move.
+     */
+    static int decodeIndex(long index, int[] king, int[] swedes, int swedeCount, int[] muscovites,
+            int muscoviteCount) {
+        long muscoviteRank = index % BINOMIALS[NUM_SQUARES][muscoviteCount];
+        index /= BINOMIALS[NUM_SQUARES][muscoviteCount];
+        long swedeRank = index % BINOMIALS[NUM_SQUARES][swedeCount];
+        index /= BINOMIALS[NUM_SQUARES][swedeCount];
+        king[0] = (int) (index % NUM_SQUARES);
+        decodeRank(muscoviteRank, muscovites, muscoviteCount);
+        decodeRank(swedeRank, swedes, swedeCount);
+        return (int) (index / NUM_SQUARES);
+    }
+
+    // Squares, in increasing order, of the set of count squares with this rank.
+    private static void decodeRank(long rank, int[] squares, int count) {
+        int square = NUM_SQUARES - 1;
+        for (int k = count; k > 0; k--) {
+            while (BINOMIALS[square][k] > rank) {
+                square--;
+            }
+            squares[k - 1] = square;
+            rank -= BINOMIALS[square][k];
+            square--;
+        }
+    }
+
+    /**
+     * @return the coordinates of some squares, as decodeIndex gives them
+     */
+    static Coord[] toCoords(int[] squares, int count) {
+        Coord[] coords = new Coord[count];
+        for (int i = 0; i < count; i++) {
+            coords[i] = Coordinates.get(squares[i]);
+        }
+        return coords;
+    }
+
+    // Entries are stored most significant bit first, and a padding byte at the
+    // end lets every entry be read as part of two bytes.
+    private static int getEntry(MappedByteBuffer table, int bits, long index) {
+        long bitOffset = index * bits;
+        int position = HEADER_SIZE + (int) (bitOffset >>> 3);
+        int twoBytes = ((table.get(position) & 0xFF) << 8) | (table.get(position + 1) & 0xFF);
+        return (twoBytes >>> (16 - (int) (bitOffset & 7) - bits)) & ((1 << bits) - 1);
+    }
+}
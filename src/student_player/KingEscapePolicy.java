@@ -0,0 +1,59 @@
+package student_player;
+
+import java.util.SplittableRandom;
+
+import coordinates.Coord;
+import coordinates.Coordinates;
+import tablut.TablutBoardState;
+import tablut.TablutMove;
+
+/**
+ * Playout policy for the moves that decide most random games: the swedes move
+ * the king to a corner whenever it has an open line to one, and the
+ * muscovites, when the king has such a line, put a piece on it. Only the king's
+ * four lines are looked at. Every other position is left to a fallback policy.
+ */
+public class KingEscapePolicy implements PlayoutPolicy {
+    private final PlayoutPolicy fallback;
+    private final int[] moves = new int[TablutBoardState.MAX_LEGAL_MOVES];
+
+    /**
+     * @param fallback
+     *            policy for the positions where the king neither escapes nor has
+     *            to be blocked
+     */
+    public KingEscapePolicy(PlayoutPolicy fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int chooseMove(TablutBoardState boardState, SplittableRandom random) {
+        Coord king = boardState.getKingPosition();
+        boolean swedesToMove = boardState.getTurnPlayer() == TablutBoardState.SWEDE;
+        int count = 0;
+        for (int direction = 0; direction < Coordinates.NUM_DIRECTIONS; direction++) {
+            Coord[] ray = Coordinates.getRay(king, direction);
+            if (ray.length == 0 || !Coordinates.isCorner(ray[ray.length - 1]) || !isOpen(boardState, ray)) {
+                continue;
+            }
+            if (swedesToMove) {
+                return TablutMove.pack(king, ray[ray.length - 1], TablutBoardState.SWEDE);
+            }
+            // Two pieces can reach the same square from different sides, but a
+            // square of one line is never on another, so there are no duplicates.
+            for (Coord c : ray) {
+                count = boardState.getMovesTo(c, moves, count);
+            }
+        }
+        return (count > 0) ? moves[random.nextInt(count)] : fallback.chooseMove(boardState, random);
+    }
+
+    private static boolean isOpen(TablutBoardState boardState, Coord[] ray) {
+        for (Coord c : ray) {
+            if (!boardState.coordIsEmpty(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
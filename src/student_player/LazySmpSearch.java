@@ -0,0 +1,122 @@
+package student_player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import boardgame.Move;
+import tablut.TablutBoardState;
+
+/**
+ * Multi-threaded alpha-beta search in the Lazy SMP style. Every thread runs its
+ * own iterative-deepening AlphaBetaSearch on the same position, and they only
+ * communicate through a shared transposition table: results one thread stores
+ * cut off or order the searches of the others. Every other helper iterates one
+ * depth deeper than the main search, so the threads spread out over the tree
+ * instead of repeating each other's work.
+ *
+ * The move played is the one of the search that completed the deepest depth,
+ * the main search winning ties.
+ */
+public class LazySmpSearch {
+    private final TranspositionTable table;
+    private final AlphaBetaSearch[] searches;
+    private final ExecutorService executor;
+
+    /**
+     * @param tableSizeInMegabytes
+     *            size of the shared transposition table
+     * @param numThreads
+     *            number of searches. The calling thread runs the main one.
+     */
+    public LazySmpSearch(int tableSizeInMegabytes, int numThreads) {
+        table = new TranspositionTable(tableSizeInMegabytes);
+        searches = new AlphaBetaSearch[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            searches[i] = new AlphaBetaSearch(table, i % 2);
+        }
+        executor = (numThreads > 1) ? Executors.newFixedThreadPool(numThreads - 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "alpha-beta-helper");
+                thread.setDaemon(true); // don't keep the client alive once the game ends
+                return thread;
+            }
+        }) : null;
+    }
+
+    /**
+     * Searches the given state on every thread until the deadline (in
+     * currentTimeMillis terms), or until the main search finds a forced result,
+     * and returns the move to play. The state is not modified.
+     */
+    public Move search(final TablutBoardState boardState, final long deadline) {
+        table.newSearch();
+        List<Future<Move>> helpers = new ArrayList<>();
+        for (int i = 1; i < searches.length; i++) {
+            final AlphaBetaSearch helper = searches[i];
+            helpers.add(executor.submit(new Callable<Move>() {
+                @Override
+                public Move call() {
+                    return helper.search(boardState, deadline);
+                }
+            }));
+        }
+
+        Move bestMove = searches[0].search(boardState, deadline);
+        int bestDepth = searches[0].getCompletedDepth();
+        for (int i = 1; i < searches.length; i++) {
+            try {
+                Move move = stopHelper(searches[i], helpers.get(i - 1));
+                if (move != null && searches[i].getCompletedDepth() > bestDepth) {
+                    bestMove = move;
+                    bestDepth = searches[i].getCompletedDepth();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A search helper failed.", e.getCause());
+            }
+        }
+        return bestMove;
+    }
+
+    // Stops a helper and waits for its move. A helper that had not started yet
+    // when stopped would start over with the real deadline, so it is stopped
+    // again until it returns.
+    private static Move stopHelper(AlphaBetaSearch helper, Future<Move> future)
+            throws InterruptedException, ExecutionException {
+        while (true) {
+            helper.stop();
+            try {
+                return future.get(1, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // still running, stop it again
+            }
+        }
+    }
+
+    /**
+     * Has every search score positions from the given endgame tables, see
+     * AlphaBetaSearch.setTablebase.
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        for (AlphaBetaSearch search : searches) {
+            search.setTablebase(tablebase);
+        }
+    }
+
+    /**
+     * @return the main search, whose statistics describe the last search
+     */
+    public AlphaBetaSearch getMainSearch() {
+        return searches[0];
+    }
+}
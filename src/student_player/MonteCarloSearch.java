@@ -0,0 +1,231 @@
+package student_player;
+
+import java.util.SplittableRandom;
+
+import boardgame.Board;
+import boardgame.Move;
+import tablut.TablutBoardState;
+import tablut.TablutMove;
+
+/**
+ * UCT Monte Carlo tree search over TreeNodes. Each iteration walks down the
+ * tree picking children by UCB1, expands one untried move, plays a random game
+ * from there and backs the result up to the root.
+ *
+ * All of this happens on the root's board state: every move played during an
+ * iteration is recorded and unmade at the end of it, so iterations allocate
+ * nothing but the new node.
+ *
+ * Several searches can also share one tree, each playing on its own copy of
+ * the root's state. They should then be given a virtual loss, which is added
+ * to every node an iteration selects and taken back once its result is in.
+ */
+public class MonteCarloSearch {
+    // Enough for a whole game, since it ends after MAX_TURNS turns.
+    private static final int MAX_PLIES = 2 * (TablutBoardState.MAX_TURNS + 2);
+
+    private final double explorationConstant;
+    private final int virtualLoss;
+    private final SplittableRandom random = new SplittableRandom();
+    private final PlayoutPolicy[] playoutPolicies = new PlayoutPolicy[2]; // by player ID
+    private PlayoutCutoff playoutCutoff = PlayoutCutoff.NONE;
+    private final int[] moveBuffer = new int[TablutBoardState.MAX_LEGAL_MOVES];
+    private final long[] undoStack = new long[MAX_PLIES];
+
+    /**
+     * @param explorationConstant
+     *            weight of the UCB1 exploration term; sqrt(2) is the textbook value
+     *            for results between 0 and 1
+     */
+    public MonteCarloSearch(double explorationConstant) {
+        this(explorationConstant, 0);
+    }
+
+    /**
+     * @param explorationConstant
+     *            weight of the UCB1 exploration term
+     * @param virtualLoss
+     *            lost visits added to each selected node while its playout runs,
+     *            for searches sharing a tree with others; 0 when searching alone
+     */
+    public MonteCarloSearch(double explorationConstant, int virtualLoss) {
+        this(explorationConstant, virtualLoss, PlayoutPolicy.Kind.UNIFORM, PlayoutPolicy.Kind.UNIFORM);
+    }
+
+    /**
+     * @param explorationConstant
+     *            weight of the UCB1 exploration term
+     * @param virtualLoss
+     *            lost visits added to each selected node while its playout runs
+     * @param swedePolicy
+     *            policy picking the swedes' moves in playouts
+     * @param muscovitePolicy
+     *            policy picking the muscovites' moves in playouts
+     */
+    public MonteCarloSearch(double explorationConstant, int virtualLoss, PlayoutPolicy.Kind swedePolicy,
+            PlayoutPolicy.Kind muscovitePolicy) {
+        this.explorationConstant = explorationConstant;
+        this.virtualLoss = virtualLoss;
+        playoutPolicies[TablutBoardState.SWEDE] = swedePolicy.create();
+        playoutPolicies[TablutBoardState.MUSCOVITE] = muscovitePolicy.create();
+    }
+
+    /**
+     * Sets when playouts stop before the end of the game, PlayoutCutoff.NONE by
+     * default.
+     */
+    public void setPlayoutCutoff(PlayoutCutoff playoutCutoff) {
+        this.playoutCutoff = playoutCutoff;
+    }
+
+    /**
+     * Searches from the given state until the deadline (in currentTimeMillis
+     * terms) and returns the root of the tree. The state is not modified.
+     */
+    public TreeNode search(TablutBoardState boardState, long deadline) {
+        return search(createRoot(boardState), deadline);
+    }
+
+    /**
+     * Continues searching an existing tree until the deadline, and returns it.
+     */
+    public TreeNode search(TreeNode root, long deadline) {
+        return search(root, root.getState(), deadline);
+    }
+
+    /**
+     * Continues searching an existing tree until the deadline, playing on the
+     * given state, which must be a position equal to the root's.
+     */
+    public TreeNode search(TreeNode root, TablutBoardState state, long deadline) {
+        while (System.currentTimeMillis() < deadline) {
+            runIteration(root, state);
+        }
+        return root;
+    }
+
+    /**
+     * Makes a fresh root for the given state. The state is not modified.
+     */
+    public TreeNode createRoot(TablutBoardState boardState) {
+        return new TreeNode(null, (TablutBoardState) boardState.clone(), null);
+    }
+
+    /**
+     * Moves the root of a tree down by one move, keeping the statistics of the
+     * subtree under that move. The move is played on the root's state, and the
+     * result must hash to the same position as boardState, the state the move
+     * actually led to; otherwise (or if the move was never searched) null is
+     * returned and the tree should be dropped.
+     */
+    public TreeNode advance(TreeNode root, Move move, TablutBoardState boardState) {
+        int packedMove = ((TablutMove) move).toPacked();
+        TreeNode child = root.getChild(packedMove);
+        if (child == null) {
+            return null;
+        }
+        TablutBoardState state = root.getState();
+        state.makeMove(packedMove);
+        if (state.getHashKey() != boardState.getHashKey()) {
+            return null;
+        }
+        child.makeRoot(state);
+        return child;
+    }
+
+    /**
+     * Runs one selection, expansion, simulation and backpropagation pass.
+     */
+    public void runIteration(TreeNode root) {
+        runIteration(root, root.getState());
+    }
+
+    /**
+     * Runs one pass on the given state, which must be a position equal to the
+     * root's, and leaves it as it was.
+     */
+    public void runIteration(TreeNode root, TablutBoardState state) {
+        int depth = 0;
+
+        // Selection.
+        TreeNode node = root;
+        while (node.isFullyExpanded() && node.getChildCount() > 0) {
+            node = node.selectChild(explorationConstant);
+            if (virtualLoss > 0) {
+                node.addVirtualLoss(virtualLoss);
+            }
+            undoStack[depth++] = state.makeMove(node.getPackedMove());
+        }
+        TreeNode selected = node;
+
+        // Expansion.
+        if (!node.isFullyExpanded()) {
+            TreeNode child = node.expand(state, random, moveBuffer);
+            if (child != node) {
+                undoStack[depth++] = state.makeMove(child.getPackedMove());
+                node = child;
+            }
+        }
+
+        // Simulation.
+        int winner = simRandomPlay(state, depth);
+
+        // Backpropagation, removing the virtual loss from the selected nodes.
+        int loss = 0;
+        for (; node != root; node = node.getParent()) {
+            if (node == selected) {
+                loss = virtualLoss;
+            }
+            node.update(winner, loss);
+        }
+        root.update(winner);
+    }
+
+    /**
+     * Returns the move of the most visited child of the root, which is the most
+     * robust choice once the search stops.
+     */
+    public Move getBestMove(TreeNode root) {
+        TreeNode best = null;
+        for (TreeNode child : root.getChildren()) {
+            if (best == null || child.getVisits() > best.getVisits()) {
+                best = child;
+            }
+        }
+        return (best == null) ? null : best.getRecentMove();
+    }
+
+    /**
+     * Simulate a random play for Monte Carlo, each side's moves picked by its
+     * playout policy, then unmake it along with the "depth" moves already on the
+     * undo stack, leaving the state as it was at the start of the iteration.
+     * TreeNode only counts wins and draws, so a playout the cutoff stops early is
+     * won by the swedes with its win probability.
+     *
+     * @param boardState
+     * @param depth number of moves already played this iteration
+     * @return the winner of the game
+     */
+    private int simRandomPlay(TablutBoardState boardState, int depth) {
+        int plies = 0;
+        int startMaterial = PlayoutCutoff.getMaterial(boardState);
+        int winner = Board.NOBODY;
+        while (!boardState.gameOver()) {
+            if (playoutCutoff.shouldStop(boardState, plies, startMaterial)) {
+                winner = (random.nextDouble() < PlayoutCutoff.getSwedeWinProbability(boardState))
+                        ? TablutBoardState.SWEDE : TablutBoardState.MUSCOVITE;
+                break;
+            }
+            int move = playoutPolicies[boardState.getTurnPlayer()].chooseMove(boardState, random);
+            undoStack[depth++] = boardState.makeMove(move);
+            plies++;
+        }
+        if (winner == Board.NOBODY) {
+            winner = boardState.getWinner();
+        }
+        while (depth > 0) {
+            boardState.unmakeMove(undoStack[--depth]);
+        }
+        return winner;
+    }
+}
@@ -0,0 +1,198 @@
+package student_player;
+
+import coordinates.Coord;
+import coordinates.Coordinates;
+import tablut.TablutBoardState;
+import tablut.TablutBoardState.Piece;
+import tablut.TablutMove;
+
+/**
+ * Orders moves for AlphaBetaSearch, best first, in layers:
+ * <ol>
+ * <li>the move from the transposition table</li>
+ * <li>king moves to a corner, then captures (more pieces first), king moves
+ * opening a line to a corner and muscovite moves closing one</li>
+ * <li>the two killer moves of the ply: quiet moves that last caused a cutoff at
+ * that ply elsewhere in the tree</li>
+ * <li>every other move, by how often it caused cutoffs anywhere, weighted by the
+ * depth they happened at</li>
+ * </ol>
+ * Moves are scored once into a per-ply buffer, and picked one at a time, since
+ * after a cutoff the rest never need sorting.
+ */
+public class MoveOrderer {
+    private static final int TABLE_MOVE_SCORE = 1 << 30;
+    private static final int KING_CORNER_SCORE = 1 << 29;
+    private static final int TACTICAL_SCORE = 1 << 28; // captures and king escapes
+    private static final int CAPTURE_SCORE = 1 << 20; // per piece captured
+    private static final int KILLER_SCORE = 1 << 27;
+    private static final int HISTORY_LIMIT = 1 << 26; // history scores stay below the killers
+
+    // History is indexed by the start and end squares of a move, which are the low
+    // 14 bits of a packed move.
+    private static final int HISTORY_SIZE = 1 << 14;
+    private static final int HISTORY_MASK = HISTORY_SIZE - 1;
+
+    private final int[][] scores;
+    private final int[][] killers;
+    private final boolean[] tableMoveQuiet; // by ply, since the table move is not scored by its tactics
+    private final int[] history = new int[HISTORY_SIZE];
+    private final byte[] captureCounts = new byte[TablutBoardState.BOARD_SIZE * TablutBoardState.BOARD_SIZE];
+
+    /**
+     * @param maxPly
+     *            deepest ply that moves will be ordered at
+     */
+    public MoveOrderer(int maxPly) {
+        scores = new int[maxPly + 1][TablutBoardState.MAX_LEGAL_MOVES];
+        killers = new int[maxPly + 1][2];
+        tableMoveQuiet = new boolean[maxPly + 1];
+        clearKillers();
+    }
+
+    /**
+     * Forgets the killers and ages the history, which was learned in other
+     * positions, before a new search.
+     */
+    public void newSearch() {
+        clearKillers();
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            history[i] >>= 2;
+        }
+    }
+
+    /**
+     * Scores the moves of the given position, which were generated into moves, so
+     * that they can be taken out in order with pickNext.
+     *
+     * @param tableMove
+     *            move from the transposition table, or TranspositionTable.NO_MOVE
+     */
+    public void scoreMoves(TablutBoardState state, int[] moves, int count, int ply, int tableMove) {
+        int[] moveScores = scores[ply];
+        int[] plyKillers = killers[ply];
+        Coord king = state.getKingPosition();
+        boolean swedesToMove = state.getTurnPlayer() == TablutBoardState.SWEDE;
+        state.getCaptureCounts(captureCounts);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int score;
+            if (move == tableMove) {
+                score = TABLE_MOVE_SCORE;
+                tableMoveQuiet[ply] = !isKingCornerMove(move, swedesToMove, king)
+                        && scoreTactics(state, move, swedesToMove, king, captureCounts) == 0;
+            } else if (isKingCornerMove(move, swedesToMove, king)) {
+                score = KING_CORNER_SCORE;
+            } else {
+                score = scoreTactics(state, move, swedesToMove, king, captureCounts);
+                if (score == 0) {
+                    if (move == plyKillers[0]) {
+                        score = KILLER_SCORE + 1;
+                    } else if (move == plyKillers[1]) {
+                        score = KILLER_SCORE;
+                    } else {
+                        score = history[move & HISTORY_MASK];
+                    }
+                }
+            }
+            moveScores[i] = score;
+        }
+    }
+
+    /**
+     * Moves the best scored move among positions from to count-1 to position
+     * from, and returns it.
+     */
+    public int pickNext(int[] moves, int count, int ply, int from) {
+        int[] moveScores = scores[ply];
+        int best = from;
+        for (int i = from + 1; i < count; i++) {
+            if (moveScores[i] > moveScores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        if (best != from) {
+            moves[best] = moves[from];
+            moves[from] = move;
+            int score = moveScores[best];
+            moveScores[best] = moveScores[from];
+            moveScores[from] = score;
+        }
+        return move;
+    }
+
+    /**
+     * Records that the move returned by the last pickNext at this ply, from
+     * position index, caused a cutoff. Captures and escapes are already tried
+     * early, so only quiet moves are remembered.
+     */
+    public void recordCutoff(int move, int ply, int index, int depth) {
+        int score = scores[ply][index];
+        boolean quiet = (score == TABLE_MOVE_SCORE) ? tableMoveQuiet[ply] : score < TACTICAL_SCORE;
+        if (!quiet) {
+            return;
+        }
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int slot = move & HISTORY_MASK;
+        history[slot] += depth * depth;
+        if (history[slot] >= HISTORY_LIMIT) {
+            for (int i = 0; i < HISTORY_SIZE; i++) {
+                history[i] >>= 1;
+            }
+        }
+    }
+
+    private static boolean isKingCornerMove(int move, boolean swedesToMove, Coord king) {
+        return swedesToMove && TablutMove.getPackedStart(move) == king
+                && Coordinates.isCorner(TablutMove.getPackedEnd(move));
+    }
+
+    // Score of a capture or of a king move opening a line to a corner, or 0 for a
+    // quiet move.
+    private static int scoreTactics(TablutBoardState state, int move, boolean swedesToMove, Coord king,
+            byte[] captureCounts) {
+        Coord end = TablutMove.getPackedEnd(move);
+        int captures = captureCounts[Coordinates.getIndex(end)];
+        if (!swedesToMove && end.distance(king) == 1 && Coordinates.isCenterOrNeighborCenter(king)) {
+            captures = state.getCaptureCount(move); // the king needs surrounding on all sides there
+        }
+        int score = (captures > 0) ? TACTICAL_SCORE + captures * CAPTURE_SCORE : 0;
+        if (swedesToMove && TablutMove.getPackedStart(move) == king) {
+            int routes = MyTools.countEscapeRoutes(state, end);
+            if (routes > 0) {
+                score = Math.max(score, TACTICAL_SCORE) + routes * CAPTURE_SCORE;
+            }
+        } else if (!swedesToMove && blocksKingRoute(state, end, king)) {
+            score = Math.max(score, TACTICAL_SCORE);
+        }
+        return score;
+    }
+
+    // Whether a muscovite move lands on the king's open line to a corner.
+    private static boolean blocksKingRoute(TablutBoardState state, Coord end, Coord king) {
+        int direction = Coordinates.getDirection(king, end);
+        if (direction < 0) {
+            return false;
+        }
+        for (Coord c : Coordinates.getRay(king, direction)) {
+            if (c != end && state.getPieceAt(c) != Piece.EMPTY) {
+                return false;
+            }
+            if (Coordinates.isCorner(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void clearKillers() {
+        for (int[] plyKillers : killers) {
+            plyKillers[0] = TranspositionTable.NO_MOVE;
+            plyKillers[1] = TranspositionTable.NO_MOVE;
+        }
+    }
+}
@@ -1,7 +1,76 @@
 package student_player;
 
+import coordinates.Coord;
+import coordinates.Coordinates;
+import tablut.TablutBoardState;
+import tablut.TablutBoardState.Piece;
+
 public class MyTools {
+    // Evaluation weights, in the same units as the scores returned by evaluate.
+    // Swedes have half as many pieces, so each of them is worth twice as much.
+    public static final int SWEDE_PIECE_VALUE = 200;
+    public static final int MUSCOVITE_PIECE_VALUE = 100;
+    public static final int KING_CORNER_DISTANCE_WEIGHT = 20;
+    public static final int KING_ATTACKER_WEIGHT = 40;
+    public static final int KING_ESCAPE_ROUTE_VALUE = 300;
+
     public static double getSomething() {
         return Math.random();
     }
+
+    /**
+     * Static evaluation of a position that is not over, from the point of view of
+     * the player to move: material, the king's distance to a corner and the
+     * muscovites around it, plus the open lines the king has to a corner.
+     */
+    public static int evaluate(TablutBoardState boardState) {
+        int score = evaluateForSwedes(boardState);
+        return (boardState.getTurnPlayer() == TablutBoardState.SWEDE) ? score : -score;
+    }
+
+    // Evaluation from the swedes' point of view.
+    private static int evaluateForSwedes(TablutBoardState boardState) {
+        Coord king = boardState.getKingPosition();
+
+        // The king is counted among the swedes' pieces, but its value is in the
+        // terms below.
+        int score = SWEDE_PIECE_VALUE * (boardState.getNumberPlayerPieces(TablutBoardState.SWEDE) - 1)
+                - MUSCOVITE_PIECE_VALUE * boardState.getNumberPlayerPieces(TablutBoardState.MUSCOVITE);
+
+        score -= KING_CORNER_DISTANCE_WEIGHT * Coordinates.distanceToClosestCorner(king);
+        for (Coord neighbor : Coordinates.getNeighbors(king)) {
+            if (boardState.getPieceAt(neighbor) == Piece.BLACK) {
+                score -= KING_ATTACKER_WEIGHT;
+            }
+        }
+        score += KING_ESCAPE_ROUTE_VALUE * countEscapeRoutes(boardState, king);
+        return score;
+    }
+
+    /**
+     * Number of corners the king could move to right now. Two of them usually
+     * cannot both be blocked in one move.
+     */
+    public static int countEscapeRoutes(TablutBoardState boardState, Coord king) {
+        return countEscapeRoutes(boardState, king, null);
+    }
+
+    /**
+     * Same as countEscapeRoutes, with the square vacated taken as empty, to count
+     * the routes of a king moving to the given square before the move is made.
+     */
+    public static int countEscapeRoutes(TablutBoardState boardState, Coord king, Coord vacated) {
+        int routes = 0;
+        for (int direction = 0; direction < Coordinates.NUM_DIRECTIONS; direction++) {
+            for (Coord c : Coordinates.getRay(king, direction)) {
+                if (c != vacated && !boardState.coordIsEmpty(c)) {
+                    break;
+                }
+                if (Coordinates.isCorner(c)) {
+                    routes++;
+                }
+            }
+        }
+        return routes;
+    }
 }
@@ -0,0 +1,169 @@
+package student_player;
+
+/**
+ * Monte Carlo tree stored as parallel arrays instead of node objects. A node is
+ * an index into the arrays; nodes are handed out by bumping a counter, and all
+ * of them are dropped at once by reset. Nothing is allocated while searching,
+ * and a node costs 28 bytes, so millions fit in the client's heap.
+ *
+ * The children of a node are allocated together when it is expanded: the node
+ * points to the first of them, and each of them to the next sibling. Wins are
+ * counted from the point of view of the player who made the node's move, 1 for
+ * a win and 0.5 for a draw.
+ *
+ * Every node also has all-moves-as-first (AMAF) statistics: the playouts
+ * through its parent in which its move was played by the same player at any
+ * later point, not only right away, scored the same way.
+ *
+ * A pool is not thread-safe; parallel searches each use their own.
+ */
+public class NodePool {
+    /** Index meaning "no node". */
+    public static final int NONE = -1;
+
+    private final int[] visits;
+    private final float[] wins;
+    private final int[] amafVisits;
+    private final float[] amafWins;
+    private final int[] firstChild;
+    private final int[] sibling;
+    private final int[] move; // packed, NONE for a root
+    private int size = 0;
+
+    /**
+     * @param capacity
+     *            number of nodes the pool can hold
+     */
+    public NodePool(int capacity) {
+        visits = new int[capacity];
+        wins = new float[capacity];
+        amafVisits = new int[capacity];
+        amafWins = new float[capacity];
+        firstChild = new int[capacity];
+        sibling = new int[capacity];
+        move = new int[capacity];
+    }
+
+    /**
+     * Drops every node.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * @return a new node without children for the given packed move, or NONE if
+     *         the pool is full
+     */
+    public int allocate(int packedMove) {
+        if (size == visits.length) {
+            return NONE;
+        }
+        initialize(size, packedMove, NONE);
+        return size++;
+    }
+
+    /**
+     * Gives a node one child per move, in the order of the moves.
+     *
+     * @return false, leaving the node as it was, if the pool has no room for them
+     */
+    public boolean expand(int node, int[] moves, int count) {
+        if (count == 0 || visits.length - size < count) {
+            return false;
+        }
+        int first = size;
+        for (int i = 0; i < count; i++) {
+            initialize(first + i, moves[i], (i + 1 < count) ? first + i + 1 : NONE);
+        }
+        size += count;
+        firstChild[node] = first;
+        return true;
+    }
+
+    private void initialize(int node, int packedMove, int nextSibling) {
+        visits[node] = 0;
+        wins[node] = 0;
+        amafVisits[node] = 0;
+        amafWins[node] = 0;
+        firstChild[node] = NONE;
+        sibling[node] = nextSibling;
+        move[node] = packedMove;
+    }
+
+    /**
+     * Records a playout through a node. result is the score of the playout for
+     * the player who made the node's move: 1 for a win, 0.5 for a draw, 0 for a
+     * loss.
+     */
+    public void update(int node, float result) {
+        visits[node]++;
+        wins[node] += result;
+    }
+
+    /**
+     * Records a playout through the node's parent in which the node's move was
+     * played later on by the same player, scored as for update.
+     */
+    public void updateAmaf(int node, float result) {
+        amafVisits[node]++;
+        amafWins[node] += result;
+    }
+
+    public int getVisits(int node) {
+        return visits[node];
+    }
+
+    public float getWins(int node) {
+        return wins[node];
+    }
+
+    public int getAmafVisits(int node) {
+        return amafVisits[node];
+    }
+
+    public float getAmafWins(int node) {
+        return amafWins[node];
+    }
+
+    /**
+     * @return the first child of the node, or NONE if it has not been expanded
+     */
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * @return the next child of the node's parent, or NONE after the last one
+     */
+    public int getSibling(int node) {
+        return sibling[node];
+    }
+
+    public int getMove(int node) {
+        return move[node];
+    }
+
+    /**
+     * @return the child of the node reached by the packed move, or NONE
+     */
+    public int getChild(int node, int packedMove) {
+        for (int child = firstChild[node]; child != NONE; child = sibling[child]) {
+            if (move[child] == packedMove) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the number of nodes in use
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return visits.length;
+    }
+}
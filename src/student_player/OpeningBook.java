@@ -0,0 +1,94 @@
+package student_player;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import boardgame.Move;
+import tablut.TablutBoardState;
+import tablut.TablutMove;
+
+/**
+ * Book of opening moves, written by OpeningBookBuilder and read straight from
+ * a memory-mapped file. The file is a header (MAGIC and the number of entries)
+ * followed by entries sorted by key, each a position's hash key and the packed
+ * move to play there, so a lookup is a binary search over the mapped bytes and
+ * nothing is read in advance.
+ */
+public class OpeningBook {
+    public static final String DEFAULT_PATH = "data/opening_book.bin";
+
+    static final int MAGIC = 0x54424F4B; // "TBOK"
+    static final int HEADER_SIZE = 8;
+    static final int ENTRY_SIZE = 12; // long key, int packed move
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+
+    private OpeningBook(MappedByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * Maps the book at the given path. A missing or unreadable file gives an empty
+     * book, so that a player without one simply searches every move.
+     */
+    public static OpeningBook load(String path) {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                return new OpeningBook(null, 0);
+            }
+            int size = buffer.getInt(4);
+            if (size < 0 || (long) HEADER_SIZE + (long) size * ENTRY_SIZE > buffer.capacity()) {
+                return new OpeningBook(null, 0);
+            }
+            return new OpeningBook(buffer, size); // the mapping outlives the channel
+        } catch (IOException e) {
+            return new OpeningBook(null, 0);
+        }
+    }
+
+    /**
+     * @return the packed book move for the position with this hash key, or
+     *         TranspositionTable.NO_MOVE if it is not in the book
+     */
+    public int probe(long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = buffer.getLong(HEADER_SIZE + middle * ENTRY_SIZE);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(HEADER_SIZE + middle * ENTRY_SIZE + 8);
+            }
+        }
+        return TranspositionTable.NO_MOVE;
+    }
+
+    /**
+     * @return the book move for the given state, or null if it is not in the
+     *         book. The move is checked to be legal, in case of a hash collision.
+     */
+    public Move getMove(TablutBoardState boardState) {
+        int packedMove = probe(boardState.getHashKey());
+        if (packedMove == TranspositionTable.NO_MOVE) {
+            return null;
+        }
+        TablutMove move = TablutMove.fromPacked(packedMove);
+        return (move.getPlayerID() == boardState.getTurnPlayer() && boardState.isLegal(move)) ? move : null;
+    }
+
+    /**
+     * @return the number of positions in the book
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,145 @@
+package student_player;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import boardgame.Board;
+import tablut.TablutBoardState;
+import tablut.TablutMove;
+
+/**
+ * Builds the opening book offline, by deep searches from the start position.
+ * The book is built once for each side. At that side's turns the position is
+ * searched for a fixed time and only the move found is followed; at the
+ * opponent's turns the few most plausible replies are followed, as ranked by a
+ * shallow search of each, along with the book's own move if the other side's
+ * lines already have one. Every searched position goes in the book with its
+ * move.
+ *
+ * Usage: OpeningBookBuilder [plies] [replies] [seconds per position] [output
+ * file], by default 6 plies, 3 replies, 5 seconds and OpeningBook.DEFAULT_PATH.
+ * Run it with a large heap, for the transposition table.
+ */
+public class OpeningBookBuilder {
+    private static final int TABLE_SIZE_MB = 256;
+    private static final int REPLY_DEPTH = 2; // depth replies are ranked at
+
+    private final int plies;
+    private final int replies;
+    private final int searchTime;
+    private final AlphaBetaSearch search = new AlphaBetaSearch(new TranspositionTable(TABLE_SIZE_MB));
+    private final AlphaBetaSearch replySearch = new AlphaBetaSearch();
+    private final Map<Long, Integer> book = new TreeMap<>(); // sorted by key, as the file must be
+
+    public OpeningBookBuilder(int plies, int replies, int searchTime) {
+        this.plies = plies;
+        this.replies = replies;
+        this.searchTime = searchTime;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int plies = (args.length > 0) ? Integer.parseInt(args[0]) : 6;
+        int replies = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+        String path = (args.length > 3) ? args[3] : OpeningBook.DEFAULT_PATH;
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies, replies, seconds * 1000);
+        builder.build(TablutBoardState.MUSCOVITE);
+        builder.build(TablutBoardState.SWEDE);
+        builder.build(TablutBoardState.MUSCOVITE); // again, now that the Swedes have book moves to follow
+        builder.write(path);
+        System.out.println("Wrote " + builder.book.size() + " positions to " + path);
+    }
+
+    /**
+     * Adds the book lines of the given side to the book.
+     */
+    public void build(int bookSide) {
+        expand(new TablutBoardState(), 0, bookSide);
+    }
+
+    private void expand(TablutBoardState state, int ply, int bookSide) {
+        if (ply >= plies || state.gameOver()) {
+            return;
+        }
+        if (state.getTurnPlayer() == bookSide) {
+            Integer move = book.get(state.getHashKey());
+            if (move == null) {
+                move = ((TablutMove) search.search(state, System.currentTimeMillis() + searchTime)).toPacked();
+                book.put(state.getHashKey(), move);
+                System.out.println("ply " + ply + ": " + TablutMove.fromPacked(move).toPrettyString() + " (depth "
+                        + search.getCompletedDepth() + ", score " + search.getBestScore() + ")");
+            }
+            long undo = state.makeMove(move);
+            expand(state, ply + 1, bookSide);
+            state.unmakeMove(undo);
+        } else {
+            int[] moves = getBestReplies(state);
+            Integer bookMove = book.get(state.getHashKey()); // our own book line for the opponent
+            if (bookMove != null && !contains(moves, bookMove)) {
+                moves = Arrays.copyOf(moves, moves.length + 1);
+                moves[moves.length - 1] = bookMove;
+            }
+            for (int move : moves) {
+                long undo = state.makeMove(move);
+                expand(state, ply + 1, bookSide);
+                state.unmakeMove(undo);
+            }
+        }
+    }
+
+    // The replies that leave the book side worst off after a shallow search.
+    private int[] getBestReplies(TablutBoardState state) {
+        int[] moves = new int[TablutBoardState.MAX_LEGAL_MOVES];
+        int count = state.getAllLegalMoves(moves);
+        long[] ranked = new long[count]; // score of the book side in the high bits, move in the low
+        for (int i = 0; i < count; i++) {
+            long undo = state.makeMove(moves[i]);
+            int score;
+            if (state.gameOver()) {
+                int winner = state.getWinner();
+                score = (winner == Board.DRAW) ? 0
+                        : (winner == state.getTurnPlayer()) ? AlphaBetaSearch.WIN_SCORE : -AlphaBetaSearch.WIN_SCORE;
+            } else {
+                replySearch.search(state, Long.MAX_VALUE, REPLY_DEPTH);
+                score = replySearch.getBestScore();
+            }
+            state.unmakeMove(undo);
+            ranked[i] = ((long) score << 32) | moves[i];
+        }
+        Arrays.sort(ranked);
+        int[] best = new int[Math.min(replies, count)];
+        for (int i = 0; i < best.length; i++) {
+            best[i] = (int) ranked[i];
+        }
+        return best;
+    }
+
+    private static boolean contains(int[] moves, int move) {
+        for (int m : moves) {
+            if (m == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the book in the format OpeningBook reads.
+     */
+    public void write(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(book.size());
+            for (Map.Entry<Long, Integer> entry : book.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+}
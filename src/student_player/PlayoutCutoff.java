@@ -0,0 +1,68 @@
+package student_player;
+
+import tablut.TablutBoardState;
+
+/**
+ * When to stop a Monte Carlo playout before the game is over, and how to score
+ * it then. A playout is cut off after a number of plies, or as soon as one
+ * side has won material worth a threshold during the playout, since from there
+ * on random moves seldom turn the game around. Material won before the playout
+ * does not count, so playouts from an unbalanced position still run. The
+ * position is then scored by the static evaluation of MyTools, mapped to a win
+ * probability by a logistic curve.
+ */
+public class PlayoutCutoff {
+    /** Playouts run to the end of the game. */
+    public static final PlayoutCutoff NONE = new PlayoutCutoff(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    // Evaluation, in MyTools units, at which a side is taken to win about 73% of
+    // the time (1 / (1 + e^-1)).
+    private static final double EVALUATION_SCALE = 400;
+
+    private final int maxPlies;
+    private final int materialThreshold;
+
+    /**
+     * @param maxPlies
+     *            plies a playout plays before it is scored
+     * @param materialThreshold
+     *            change in the material difference since the playout started,
+     *            valued as MyTools values pieces, at which it is scored at once
+     */
+    public PlayoutCutoff(int maxPlies, int materialThreshold) {
+        this.maxPlies = maxPlies;
+        this.materialThreshold = materialThreshold;
+    }
+
+    /**
+     * Whether a playout that has played the given number of plies, and is not
+     * over, should stop here and be scored by getSwedeWinProbability.
+     *
+     * @param startMaterial
+     *            getMaterial of the position the playout started from
+     */
+    public boolean shouldStop(TablutBoardState boardState, int plies, int startMaterial) {
+        return plies >= maxPlies || Math.abs(getMaterial(boardState) - startMaterial) >= materialThreshold;
+    }
+
+    /**
+     * @return the chance of the swedes winning from a position that is not over,
+     *         as the static evaluation has it
+     */
+    public static float getSwedeWinProbability(TablutBoardState boardState) {
+        int evaluation = MyTools.evaluate(boardState);
+        if (boardState.getTurnPlayer() != TablutBoardState.SWEDE) {
+            evaluation = -evaluation;
+        }
+        return (float) (1 / (1 + Math.exp(-evaluation / EVALUATION_SCALE)));
+    }
+
+    /**
+     * @return the material difference from the swedes' point of view, without the
+     *         king
+     */
+    public static int getMaterial(TablutBoardState boardState) {
+        return MyTools.SWEDE_PIECE_VALUE * (boardState.getNumberPlayerPieces(TablutBoardState.SWEDE) - 1)
+                - MyTools.MUSCOVITE_PIECE_VALUE * boardState.getNumberPlayerPieces(TablutBoardState.MUSCOVITE);
+    }
+}
@@ -0,0 +1,57 @@
+package student_player;
+
+import java.util.SplittableRandom;
+
+import tablut.TablutBoardState;
+
+/**
+ * Picks the moves of Monte Carlo playouts. A policy looks at the position it is
+ * given without cloning it, and may keep buffers between calls, so every search
+ * thread needs its own instances: searches are configured with a Kind per side
+ * and create them.
+ */
+public interface PlayoutPolicy {
+    /**
+     * Returns a legal move of the player to move, packed with TablutMove.pack.
+     * The state is not modified.
+     */
+    int chooseMove(TablutBoardState boardState, SplittableRandom random);
+
+    /**
+     * The policies playouts can use.
+     */
+    enum Kind {
+        /** Uniformly random moves, the plain Monte Carlo playout. */
+        UNIFORM,
+        /** Captures whenever there are some, see CaptureFirstPolicy. */
+        CAPTURE_FIRST,
+        /** King escapes and blocks first, then captures, see KingEscapePolicy. */
+        KING_ESCAPE,
+        /** Moves drawn by a softmax over their features, see SoftmaxPolicy. */
+        SOFTMAX;
+
+        /**
+         * @return a new policy of this kind, for one search thread
+         */
+        public PlayoutPolicy create() {
+            switch (this) {
+            case CAPTURE_FIRST:
+                return new CaptureFirstPolicy(CaptureFirstPolicy.DEFAULT_EPSILON);
+            case KING_ESCAPE:
+                return new KingEscapePolicy(new CaptureFirstPolicy(CaptureFirstPolicy.DEFAULT_EPSILON));
+            case SOFTMAX:
+                return new SoftmaxPolicy();
+            default:
+                return UNIFORM_POLICY;
+            }
+        }
+    }
+
+    /** Uniformly random moves. It keeps no state, so threads can share it. */
+    PlayoutPolicy UNIFORM_POLICY = new PlayoutPolicy() {
+        @Override
+        public int chooseMove(TablutBoardState boardState, SplittableRandom random) {
+            return boardState.sampleRandomMove(random);
+        }
+    };
+}
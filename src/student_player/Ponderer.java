@@ -0,0 +1,97 @@
+package student_player;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import boardgame.Move;
+import tablut.TablutBoardState;
+
+/**
+ * Lets a SearchEngine think on the opponent's time. After our move, ponder
+ * keeps the engine searching from the resulting position on a background
+ * thread, over all of the opponent's replies. When the reply arrives, the
+ * search is stopped and advance moves the engine's trees down to it, so the
+ * next turn starts with the playouts that went through that reply.
+ *
+ * The engine is only ever used by one thread at a time: searching, advancing
+ * and pondering again all stop the background search first.
+ */
+public class Ponderer implements SearchEngine {
+    private final SearchEngine engine;
+    private final TimeManager ponderTime = new TimeManager();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "mcts-ponder");
+            thread.setDaemon(true); // don't keep the client alive once the game ends
+            return thread;
+        }
+    });
+    private Future<?> pondering;
+
+    public Ponderer(SearchEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Starts searching the given state in the background until the next call on
+     * this object. The state is copied, so the caller may go on changing it.
+     */
+    public void ponder(TablutBoardState boardState) {
+        stop();
+        final TablutBoardState state = (TablutBoardState) boardState.clone();
+        ponderTime.startPondering();
+        pondering = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                engine.search(state, ponderTime);
+            }
+        });
+    }
+
+    @Override
+    public Move search(TablutBoardState boardState, TimeManager timeManager) {
+        stop();
+        return engine.search(boardState, timeManager);
+    }
+
+    @Override
+    public void advance(Move move, TablutBoardState boardState) {
+        stop();
+        engine.advance(move, boardState);
+    }
+
+    /**
+     * Stops pondering and waits for the background search to return. A search
+     * that had not started yet when stopped would start over, so it is stopped
+     * again until it returns.
+     */
+    @Override
+    public void stop() {
+        if (pondering == null) {
+            return;
+        }
+        try {
+            while (true) {
+                engine.stop();
+                try {
+                    pondering.get(1, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    // still running, stop it again
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The pondering search failed.", e.getCause());
+        } finally {
+            pondering = null;
+        }
+    }
+}
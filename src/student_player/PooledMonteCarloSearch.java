@@ -0,0 +1,326 @@
+package student_player;
+
+import java.util.SplittableRandom;
+
+import boardgame.Board;
+import boardgame.Move;
+import tablut.TablutBoardState;
+import tablut.TablutMove;
+
+/**
+ * UCT Monte Carlo tree search like MonteCarloSearch, but with the tree kept in
+ * a NodePool, so that searching creates no objects at all. A leaf is expanded,
+ * all of its children at once, the second time a playout reaches it; the first
+ * time it only gets the playout. Unvisited children are tried, in random order,
+ * before UCB1 picks among the others.
+ *
+ * With a RAVE equivalence set, selection also uses the AMAF statistics of the
+ * children (see NodePool): Tablut moves keep much of their value whenever they
+ * are played, so these fill in long before a child has visits of its own.
+ *
+ * The search plays on its own copy of the root position, making and unmaking
+ * the moves of each iteration. Between moves the tree is moved down by advance.
+ * It is dropped, and the pool reset, when a search starts from another
+ * position or with the pool over half full, so that a whole move's worth of
+ * room is always left.
+ */
+public class PooledMonteCarloSearch {
+    // Enough for a whole game, since it ends after MAX_TURNS turns.
+    private static final int MAX_PLIES = 2 * (TablutBoardState.MAX_TURNS + 2);
+    // Packed moves are below this: two squares and the player.
+    private static final int PACKED_MOVES = 1 << 15;
+
+    private final double explorationConstant;
+    private final NodePool pool;
+    private final SplittableRandom random = new SplittableRandom();
+    private final PlayoutPolicy[] playoutPolicies = new PlayoutPolicy[2]; // by player ID
+    private PlayoutCutoff playoutCutoff = PlayoutCutoff.NONE;
+    private final int[] moveBuffer = new int[TablutBoardState.MAX_LEGAL_MOVES];
+    private final long[] undoStack = new long[MAX_PLIES];
+    private final int[] path = new int[MAX_PLIES + 1];
+    private final int[] playedMoves = new int[MAX_PLIES]; // the moves of the last iteration, in order
+    private final int[] playedStamps = new int[PACKED_MOVES]; // by packed move, see updateAmaf
+    private int playedCount;
+    private int iteration;
+    private int raveEquivalence = 0;
+    private TablutBoardState rootState;
+    private int root = NodePool.NONE;
+
+    /**
+     * @param explorationConstant
+     *            weight of the UCB1 exploration term
+     * @param capacity
+     *            number of nodes in the pool
+     */
+    public PooledMonteCarloSearch(double explorationConstant, int capacity) {
+        this(explorationConstant, capacity, PlayoutPolicy.Kind.UNIFORM, PlayoutPolicy.Kind.UNIFORM);
+    }
+
+    /**
+     * @param explorationConstant
+     *            weight of the UCB1 exploration term
+     * @param capacity
+     *            number of nodes in the pool
+     * @param swedePolicy
+     *            policy picking the swedes' moves in playouts
+     * @param muscovitePolicy
+     *            policy picking the muscovites' moves in playouts
+     */
+    public PooledMonteCarloSearch(double explorationConstant, int capacity, PlayoutPolicy.Kind swedePolicy,
+            PlayoutPolicy.Kind muscovitePolicy) {
+        this.explorationConstant = explorationConstant;
+        this.pool = new NodePool(capacity);
+        playoutPolicies[TablutBoardState.SWEDE] = swedePolicy.create();
+        playoutPolicies[TablutBoardState.MUSCOVITE] = muscovitePolicy.create();
+    }
+
+    /**
+     * Sets when playouts stop before the end of the game, PlayoutCutoff.NONE by
+     * default.
+     */
+    public void setPlayoutCutoff(PlayoutCutoff playoutCutoff) {
+        this.playoutCutoff = playoutCutoff;
+    }
+
+    /**
+     * Sets the RAVE equivalence k: children are valued by
+     * beta * AMAF mean + (1 - beta) * mean, with beta = sqrt(k / (3n + k)) for n
+     * visits, so that both means weigh the same after k visits. 0, the default,
+     * turns RAVE and the AMAF statistics off.
+     */
+    public void setRaveEquivalence(int raveEquivalence) {
+        this.raveEquivalence = raveEquivalence;
+    }
+
+    /**
+     * Searches the given state until the deadline (in currentTimeMillis terms),
+     * continuing the current tree if it is rooted at the same position. The state
+     * is not modified.
+     */
+    public void search(TablutBoardState boardState, long deadline) {
+        setRoot(boardState);
+        search(deadline);
+    }
+
+    /**
+     * Makes the given state the root of the search, keeping the current tree if
+     * it is rooted at the same position and leaves enough room. The state is not
+     * modified.
+     */
+    public void setRoot(TablutBoardState boardState) {
+        if (root == NodePool.NONE || rootState.getHashKey() != boardState.getHashKey()
+                || pool.size() > pool.capacity() / 2) {
+            pool.reset();
+            rootState = (TablutBoardState) boardState.clone();
+            root = pool.allocate(NodePool.NONE);
+        }
+    }
+
+    /**
+     * Continues searching from the root set last until the deadline.
+     */
+    public void search(long deadline) {
+        while (System.currentTimeMillis() < deadline) {
+            runIteration();
+        }
+    }
+
+    /**
+     * Moves the root down by a move that was played, keeping the statistics of the
+     * subtree under it. The tree is dropped if the move was never searched, or if
+     * the result does not hash to boardState, the state the move actually led to.
+     */
+    public void advance(Move move, TablutBoardState boardState) {
+        if (root == NodePool.NONE) {
+            return;
+        }
+        int packedMove = ((TablutMove) move).toPacked();
+        root = pool.getChild(root, packedMove);
+        if (root == NodePool.NONE) {
+            return;
+        }
+        rootState.makeMove(packedMove);
+        if (rootState.getHashKey() != boardState.getHashKey()) {
+            root = NodePool.NONE;
+        }
+    }
+
+    /**
+     * Returns the move of the most visited child of the root, or null if nothing
+     * was searched.
+     */
+    public Move getBestMove() {
+        int best = NodePool.NONE;
+        for (int child = getFirstRootChild(); child != NodePool.NONE; child = pool.getSibling(child)) {
+            if (best == NodePool.NONE || pool.getVisits(child) > pool.getVisits(best)) {
+                best = child;
+            }
+        }
+        return (best == NodePool.NONE) ? null : TablutMove.fromPacked(pool.getMove(best));
+    }
+
+    /**
+     * @return the number of playouts through the root, or 0 if there is no tree
+     */
+    public int getRootVisits() {
+        return (root == NodePool.NONE) ? 0 : pool.getVisits(root);
+    }
+
+    /**
+     * @return the first child of the root, to walk its children with the pool's
+     *         getSibling, or NONE if there is no tree
+     */
+    public int getFirstRootChild() {
+        return (root == NodePool.NONE) ? NodePool.NONE : pool.getFirstChild(root);
+    }
+
+    public NodePool getPool() {
+        return pool;
+    }
+
+    /**
+     * Runs one selection, expansion, simulation and backpropagation pass.
+     */
+    public void runIteration() {
+        TablutBoardState state = rootState;
+        int node = root;
+        int pathLength = 0;
+        int depth = 0;
+        path[pathLength++] = node;
+
+        // Selection, expanding the leaf it ends on if that was visited before.
+        while (true) {
+            if (pool.getFirstChild(node) == NodePool.NONE) {
+                if ((pool.getVisits(node) == 0 && node != root) || state.gameOver()) {
+                    break;
+                }
+                int count = state.getAllLegalMoves(moveBuffer);
+                if (!pool.expand(node, moveBuffer, count)) {
+                    break; // the pool is full, so the tree stops growing
+                }
+            }
+            node = selectChild(node);
+            playedMoves[depth] = pool.getMove(node);
+            undoStack[depth++] = state.makeMove(pool.getMove(node));
+            path[pathLength++] = node;
+            if (pool.getVisits(node) == 0) {
+                break;
+            }
+        }
+
+        // Simulation.
+        float swedeScore = simRandomPlay(state, depth);
+
+        // Backpropagation.
+        for (int i = pathLength - 1; i >= 0; i--) {
+            pool.update(path[i], getResult(path[i], swedeScore));
+        }
+        if (raveEquivalence > 0) {
+            updateAmaf(pathLength, swedeScore);
+        }
+    }
+
+    // Updates the AMAF statistics of the children of every node on the path
+    // whose move was played from that node's ply on. Moves are marked as played
+    // by stamping them with the iteration, walking up the path so that each
+    // node adds the one tree move played from it.
+    private void updateAmaf(int pathLength, float swedeScore) {
+        int stamp = ++iteration;
+        for (int ply = pathLength - 1; ply < playedCount; ply++) {
+            playedStamps[playedMoves[ply]] = stamp;
+        }
+        for (int i = pathLength - 1; i >= 0; i--) {
+            if (i < pathLength - 1) {
+                playedStamps[playedMoves[i]] = stamp;
+            }
+            for (int child = pool.getFirstChild(path[i]); child != NodePool.NONE; child = pool.getSibling(child)) {
+                if (playedStamps[pool.getMove(child)] == stamp) {
+                    pool.updateAmaf(child, getResult(child, swedeScore));
+                }
+            }
+        }
+    }
+
+    // Picks a random unvisited child if there is one, and the child maximizing
+    // UCB1 otherwise. With RAVE a child only counts as unvisited while it has no
+    // AMAF statistics either, and is otherwise valued as if visited once.
+    private int selectChild(int node) {
+        double logVisits = Math.log(Math.max(1, pool.getVisits(node)));
+        int best = NodePool.NONE;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int unvisited = 0;
+        for (int child = pool.getFirstChild(node); child != NodePool.NONE; child = pool.getSibling(child)) {
+            int visits = pool.getVisits(child);
+            if (visits == 0 && (raveEquivalence == 0 || pool.getAmafVisits(child) == 0)) {
+                if (random.nextInt(++unvisited) == 0) {
+                    best = child;
+                }
+            } else if (unvisited == 0) {
+                double value = getValue(child, visits)
+                        + explorationConstant * Math.sqrt(logVisits / Math.max(1, visits));
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Mean score of a child, blended with its AMAF mean by the RAVE schedule.
+    private double getValue(int child, int visits) {
+        double value = (visits == 0) ? 0 : pool.getWins(child) / visits;
+        int amafVisits = pool.getAmafVisits(child);
+        if (raveEquivalence == 0 || amafVisits == 0) {
+            return value;
+        }
+        double beta = Math.sqrt(raveEquivalence / (3.0 * visits + raveEquivalence));
+        return (1 - beta) * value + beta * pool.getAmafWins(child) / amafVisits;
+    }
+
+    // Score of a playout for the player who made the node's move, given the
+    // swedes' score.
+    private float getResult(int node, float swedeScore) {
+        int move = pool.getMove(node);
+        if (move == NodePool.NONE) {
+            return 0.5f; // the root's own score is never used
+        }
+        return (TablutMove.getPackedPlayer(move) == TablutBoardState.SWEDE) ? swedeScore : 1 - swedeScore;
+    }
+
+    /**
+     * Simulate a random play for Monte Carlo, each side's moves picked by its
+     * playout policy, then unmake it along with the "depth" moves already on the
+     * undo stack, leaving the state as it was at the start of the iteration. A
+     * playout the cutoff stops early is scored by its win probability. The
+     * moves are left in playedMoves for the AMAF statistics.
+     *
+     * @param boardState
+     * @param depth number of moves already played this iteration
+     * @return the swedes' score: 1 for a win, 0 for a loss and 0.5 for a draw
+     */
+    private float simRandomPlay(TablutBoardState boardState, int depth) {
+        int plies = 0;
+        int startMaterial = PlayoutCutoff.getMaterial(boardState);
+        float swedeScore = -1;
+        while (!boardState.gameOver()) {
+            if (playoutCutoff.shouldStop(boardState, plies, startMaterial)) {
+                swedeScore = PlayoutCutoff.getSwedeWinProbability(boardState);
+                break;
+            }
+            int move = playoutPolicies[boardState.getTurnPlayer()].chooseMove(boardState, random);
+            playedMoves[depth] = move;
+            undoStack[depth++] = boardState.makeMove(move);
+            plies++;
+        }
+        playedCount = depth;
+        if (swedeScore < 0) {
+            int winner = boardState.getWinner();
+            swedeScore = (winner == Board.DRAW) ? 0.5f : (winner == TablutBoardState.SWEDE) ? 1 : 0;
+        }
+        while (depth > 0) {
+            boardState.unmakeMove(undoStack[--depth]);
+        }
+        return swedeScore;
+    }
+}
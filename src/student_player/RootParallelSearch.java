@@ -0,0 +1,221 @@
+package student_player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import boardgame.Move;
+import tablut.TablutBoardState;
+import tablut.TablutMove;
+
+/**
+ * Root-parallel Monte Carlo tree search. Every worker grows its own tree from
+ * the same position with its own PooledMonteCarloSearch (and so its own node
+ * pool and random generator), and nothing is shared while searching. The root
+ * children statistics of all trees are summed per move, and the move with the
+ * most visits overall is played.
+ *
+ * Workers search in short slices, between which the calling thread checks with
+ * the time manager whether the totals are already decided.
+ *
+ * The trees are kept between turns and moved down by advance, as with a single
+ * search.
+ */
+public class RootParallelSearch implements SearchEngine {
+    private static final int CHECK_INTERVAL = 10; // milliseconds between early stop checks
+
+    private final PooledMonteCarloSearch[] searches;
+    private final ExecutorService executor;
+    private volatile boolean stopped;
+
+    /**
+     * @param explorationConstant
+     *            UCB1 exploration constant used by every worker
+     * @param numThreads
+     *            number of independent trees, one per thread. The calling thread
+     *            searches one of them itself.
+     * @param totalNodes
+     *            number of tree nodes, split evenly between the workers' pools
+     */
+    public RootParallelSearch(double explorationConstant, int numThreads, int totalNodes) {
+        this(explorationConstant, numThreads, totalNodes, PlayoutPolicy.Kind.UNIFORM, PlayoutPolicy.Kind.UNIFORM);
+    }
+
+    /**
+     * Same as the constructor above, with playout policies other than uniform.
+     *
+     * @param swedePolicy
+     *            policy picking the swedes' moves in every worker's playouts
+     * @param muscovitePolicy
+     *            policy picking the muscovites' moves in every worker's playouts
+     */
+    public RootParallelSearch(double explorationConstant, int numThreads, int totalNodes,
+            PlayoutPolicy.Kind swedePolicy, PlayoutPolicy.Kind muscovitePolicy) {
+        searches = new PooledMonteCarloSearch[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            searches[i] = new PooledMonteCarloSearch(explorationConstant, totalNodes / numThreads, swedePolicy,
+                    muscovitePolicy);
+        }
+        executor = (numThreads > 1) ? Executors.newFixedThreadPool(numThreads - 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "mcts-worker");
+                thread.setDaemon(true); // don't keep the client alive once the game ends
+                return thread;
+            }
+        }) : null;
+    }
+
+    /**
+     * Searches the given state on every worker until the time manager lets it
+     * stop, and returns the move with the most visits summed over all trees. The
+     * state is not modified.
+     */
+    @Override
+    public Move search(TablutBoardState boardState, TimeManager timeManager) {
+        final long deadline = timeManager.getDeadline();
+        for (PooledMonteCarloSearch search : searches) {
+            search.setRoot(boardState);
+        }
+        int startVisits = getRootVisits();
+        stopped = false;
+
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 1; i < searches.length; i++) {
+            final PooledMonteCarloSearch search = searches[i];
+            workers.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    long now;
+                    while (!stopped && (now = System.currentTimeMillis()) < deadline) {
+                        search.search(Math.min(deadline, now + CHECK_INTERVAL));
+                    }
+                }
+            }));
+        }
+        long now;
+        while (!stopped && (now = System.currentTimeMillis()) < deadline) {
+            searches[0].search(Math.min(deadline, now + CHECK_INTERVAL));
+            if (canStopEarly(timeManager, getRootVisits() - startVisits)) {
+                break;
+            }
+        }
+        stopped = true;
+        for (Future<?> future : workers) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A search worker failed.", e.getCause());
+            }
+        }
+        return getBestMove();
+    }
+
+    /**
+     * Stops a search running on another thread. A search that has not started its
+     * workers yet would clear this, so callers should repeat it until the search
+     * returns.
+     */
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Has every worker stop its playouts by the given cutoff, see
+     * PooledMonteCarloSearch.setPlayoutCutoff.
+     */
+    public void setPlayoutCutoff(PlayoutCutoff playoutCutoff) {
+        for (PooledMonteCarloSearch search : searches) {
+            search.setPlayoutCutoff(playoutCutoff);
+        }
+    }
+
+    /**
+     * Has every worker value children with RAVE, see
+     * PooledMonteCarloSearch.setRaveEquivalence.
+     */
+    public void setRaveEquivalence(int raveEquivalence) {
+        for (PooledMonteCarloSearch search : searches) {
+            search.setRaveEquivalence(raveEquivalence);
+        }
+    }
+
+    /**
+     * Moves every tree down by a move that was played, see
+     * PooledMonteCarloSearch.advance.
+     */
+    @Override
+    public void advance(Move move, TablutBoardState boardState) {
+        for (PooledMonteCarloSearch search : searches) {
+            search.advance(move, boardState);
+        }
+    }
+
+    // Whether the time manager lets the search stop with the current totals.
+    // Other workers' counts are read while they search, which can only make
+    // them slightly stale.
+    private boolean canStopEarly(TimeManager timeManager, int playouts) {
+        int best = 0;
+        int second = 0;
+        for (double[] total : getTotals().values()) {
+            int visits = (int) total[0];
+            if (visits > best) {
+                second = best;
+                best = visits;
+            } else if (visits > second) {
+                second = visits;
+            }
+        }
+        return timeManager.canStopEarly(best, second, playouts);
+    }
+
+    private int getRootVisits() {
+        int visits = 0;
+        for (PooledMonteCarloSearch search : searches) {
+            visits += search.getRootVisits();
+        }
+        return visits;
+    }
+
+    // Picks the move with the most visits over all trees, breaking ties by wins.
+    private Move getBestMove() {
+        int bestMove = -1;
+        double[] best = null;
+        for (Map.Entry<Integer, double[]> entry : getTotals().entrySet()) {
+            double[] total = entry.getValue();
+            if (best == null || total[0] > best[0] || (total[0] == best[0] && total[1] > best[1])) {
+                best = total;
+                bestMove = entry.getKey();
+            }
+        }
+        return (bestMove < 0) ? null : TablutMove.fromPacked(bestMove);
+    }
+
+    // Sums the visits and wins of the root children per packed move over all
+    // trees.
+    private Map<Integer, double[]> getTotals() {
+        Map<Integer, double[]> totals = new HashMap<>();
+        for (PooledMonteCarloSearch search : searches) {
+            NodePool pool = search.getPool();
+            for (int child = search.getFirstRootChild(); child != NodePool.NONE; child = pool.getSibling(child)) {
+                double[] total = totals.get(pool.getMove(child));
+                if (total == null) {
+                    total = new double[2];
+                    totals.put(pool.getMove(child), total);
+                }
+                total[0] += pool.getVisits(child);
+                total[1] += pool.getWins(child);
+            }
+        }
+        return totals;
+    }
+}
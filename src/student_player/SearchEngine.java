@@ -0,0 +1,29 @@
+package student_player;
+
+import boardgame.Move;
+import tablut.TablutBoardState;
+
+/**
+ * A search StudentPlayer can run its turns with. Engines may keep what they
+ * learned between turns, and are told about every move played so they can
+ * follow the game.
+ */
+public interface SearchEngine {
+    /**
+     * Searches the given state until the time manager's deadline, or until it
+     * allows stopping early, and returns the move to play. The state is not
+     * modified.
+     */
+    Move search(TablutBoardState boardState, TimeManager timeManager);
+
+    /**
+     * Called with every move played, ours and the opponent's, and the state it
+     * led to.
+     */
+    void advance(Move move, TablutBoardState boardState);
+
+    /**
+     * Makes a search running on another thread return as soon as possible.
+     */
+    void stop();
+}
@@ -0,0 +1,108 @@
+package student_player;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import coordinates.Coord;
+import coordinates.Coordinates;
+import tablut.MovePolicy;
+import tablut.TablutBoardState;
+import tablut.TablutMove;
+
+/**
+ * Playout policy drawing each move with probability proportional to
+ * exp(score), where the score adds up a few cheap features of the move:
+ * captures, king moves to a corner, to a square with open lines to corners or
+ * closer to one, and muscovite moves onto the king's open lines or next to it.
+ *
+ * The features only need what TablutBoardState can tell about the position as
+ * it is, gathered once per position: the captures every landing square makes
+ * (getCaptureCounts) and the squares on the king's open lines. Scores are whole
+ * steps of half a unit, so exp is a table lookup, and the draw is the single
+ * pass of sampleRandomMove with weights.
+ */
+public class SoftmaxPolicy implements PlayoutPolicy, MovePolicy {
+    // Feature weights, in steps of half a unit of the softmax score.
+    private static final int CAPTURE_WEIGHT = 4; // per piece
+    private static final int ESCAPE_ROUTE_WEIGHT = 4; // per open line the king moves onto
+    private static final int KING_CLOSER_WEIGHT = 1;
+    private static final int BLOCK_WEIGHT = 6;
+    private static final int KING_NEIGHBOR_WEIGHT = 2;
+    // The largest score, given to the king reaching a corner. Weights stay small
+    // enough that 256 moves of this score still add up to an int.
+    private static final int MAX_SCORE = 24;
+    private static final int[] WEIGHTS = new int[MAX_SCORE + 1];
+    static {
+        for (int score = 0; score <= MAX_SCORE; score++) {
+            WEIGHTS[score] = (int) Math.round(16 * Math.exp(score / 2.0));
+        }
+    }
+
+    private static final int NUM_SQUARES = TablutBoardState.BOARD_SIZE * TablutBoardState.BOARD_SIZE;
+
+    private final byte[] captureCounts = new byte[NUM_SQUARES];
+    private final boolean[] onKingLine = new boolean[NUM_SQUARES];
+    private Coord king;
+    private boolean swedesToMove;
+    private boolean kingSurroundedCapture; // the king needs attackers on all sides
+
+    @Override
+    public int chooseMove(TablutBoardState boardState, SplittableRandom random) {
+        prepare(boardState);
+        return boardState.sampleRandomMove(random, this);
+    }
+
+    @Override
+    public int weight(TablutBoardState boardState, int packedMove) {
+        Coord end = TablutMove.getPackedEnd(packedMove);
+        int captures = captureCounts[Coordinates.getIndex(end)];
+        if (!swedesToMove && kingSurroundedCapture && end.distance(king) == 1) {
+            captures = boardState.getCaptureCount(packedMove); // not in captureCounts
+        }
+        int score = CAPTURE_WEIGHT * captures;
+        if (swedesToMove) {
+            if (TablutMove.getPackedStart(packedMove) == king) {
+                if (Coordinates.isCorner(end)) {
+                    return WEIGHTS[MAX_SCORE];
+                }
+                score += ESCAPE_ROUTE_WEIGHT * MyTools.countEscapeRoutes(boardState, end, king);
+                if (Coordinates.distanceToClosestCorner(end) < Coordinates.distanceToClosestCorner(king)) {
+                    score += KING_CLOSER_WEIGHT;
+                }
+            }
+        } else {
+            if (onKingLine[Coordinates.getIndex(end)]) {
+                score += BLOCK_WEIGHT;
+            }
+            if (end.distance(king) == 1) {
+                score += KING_NEIGHBOR_WEIGHT;
+            }
+        }
+        return WEIGHTS[Math.min(score, MAX_SCORE)];
+    }
+
+    // Gathers the features that belong to the position rather than to a move.
+    private void prepare(TablutBoardState boardState) {
+        king = boardState.getKingPosition();
+        swedesToMove = boardState.getTurnPlayer() == TablutBoardState.SWEDE;
+        kingSurroundedCapture = Coordinates.isCenterOrNeighborCenter(king);
+        boardState.getCaptureCounts(captureCounts);
+        if (swedesToMove) {
+            return;
+        }
+        Arrays.fill(onKingLine, false);
+        for (int direction = 0; direction < Coordinates.NUM_DIRECTIONS; direction++) {
+            Coord[] ray = Coordinates.getRay(king, direction);
+            if (ray.length == 0 || !Coordinates.isCorner(ray[ray.length - 1])) {
+                continue;
+            }
+            boolean open = true;
+            for (Coord c : ray) {
+                open &= boardState.coordIsEmpty(c);
+            }
+            for (Coord c : ray) {
+                onKingLine[Coordinates.getIndex(c)] = open;
+            }
+        }
+    }
+}
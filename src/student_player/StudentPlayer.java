@@ -1,9 +1,6 @@
 package student_player;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
-
+import boardgame.BoardState;
 import boardgame.Move;
 import coordinates.Coord;
 import coordinates.Coordinates;
@@ -15,14 +12,34 @@ import tablut.TablutPlayer;
 public class StudentPlayer extends TablutPlayer {
 	
 	//Constants
-	private final int WEIGHTING_NUM_PCS = 2;
-	private final int WEIGHTING_KING_DIST = 10;
-	private final int WEIGHTING_PCS_TO_KING = 1;
-	private final int MONTE_CARLO_END_TIME = 1000;
+	private final double EXPLORATION_CONSTANT = Math.sqrt(2);
+	private final int NUM_SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+	// true to have all threads share one tree, false for one tree per thread
+	private final boolean TREE_PARALLEL_SEARCH = false;
+	private final int VIRTUAL_LOSS = 3;
+	// nodes shared by the root-parallel trees, 28 bytes each (about 170 MB)
+	private final int MONTE_CARLO_NODES = 6000000;
+	// keep searching while the opponent thinks
+	private final boolean PONDER = true;
+	// how each side's moves are picked in playouts, see PlayoutPolicy
+	private final PlayoutPolicy.Kind SWEDE_PLAYOUT_POLICY = PlayoutPolicy.Kind.SOFTMAX;
+	private final PlayoutPolicy.Kind MUSCOVITE_PLAYOUT_POLICY = PlayoutPolicy.Kind.KING_ESCAPE;
+	// stop playouts early and score them with the static evaluation. This pays off
+	// with uniform playouts, but the policies above end games in about 30 plies already
+	private final boolean TRUNCATE_PLAYOUTS = false;
+	private final int PLAYOUT_CUTOFF_PLIES = 20;
+	private final int PLAYOUT_CUTOFF_MATERIAL = 400; // two swedes or four muscovites
+	// visits after which a child's own mean counts as much as its AMAF mean, 0 for plain UCT
+	private final int RAVE_EQUIVALENCE = 300;
 	
 	//Player variables
 	private int studentPlayer;
 	private int opponentPlayer;	
+	// created on first use by initialize, not when the player is constructed
+	private Ponderer monteCarloSearch;
+	private TimeManager timeManager = new TimeManager();
+	private OpeningBook openingBook;
+	private EndgameTablebase endgameTablebase;
 
     /**
      * You must modify this constructor to return your student number. This is
@@ -39,6 +56,8 @@ public class StudentPlayer extends TablutPlayer {
      * make decisions.
      */
     public Move chooseMove(TablutBoardState boardState) {
+    		long startTimeStamp = System.currentTimeMillis();
+    		initialize();
        
     		// set the studentPlayer and opponentPlayer IDs
     		if(player_id == TablutBoardState.SWEDE) {
@@ -50,186 +69,156 @@ public class StudentPlayer extends TablutPlayer {
     			opponentPlayer = TablutBoardState.SWEDE;
     		}
     		
-    		// add root node and get all children nodes
-    		TreeNode rootNode = new TreeNode(null, boardState, null);
-    		rootNode.addChildren();
-    		List<TreeNode> children = rootNode.getChildren();
-    		
     		// make win move if there is one
-    		Move winMove = findWinMove(children);
+    		Move winMove = findWinMove(boardState);
     		if(winMove != null) {
     			return winMove;
     		}
     		
+    		// play from the opening book while it has the position
+    		Move bookMove = openingBook.getMove(boardState);
+    		if(bookMove != null) {
+    			return bookMove;
+    		}
+    		
+    		// play the fastest win once the endgame tables have the position
+    		int tablebaseMove = endgameTablebase.getWinningMove((TablutBoardState) boardState.clone(),
+    				new int[TablutBoardState.MAX_LEGAL_MOVES]);
+    		if(tablebaseMove != TranspositionTable.NO_MOVE) {
+    			return TablutMove.fromPacked(tablebaseMove);
+    		}
+    		
     		// if greedy move exists for king to get to corner
     		if(studentPlayer == TablutBoardState.SWEDE) {
-    			Move greedyMove = findGreedyMove(rootNode);
+    			Move greedyMove = findGreedyMove(boardState);
     			if(greedyMove != null) {
     				return greedyMove;
     			}
     		}
     		
-    		// run monte carlo sim if no greedy move exists
-    		long startTimeStamp = System.currentTimeMillis();
-    		while((System.currentTimeMillis() - startTimeStamp) < MONTE_CARLO_END_TIME) {
-    			for(TreeNode child: children) {
-    				TreeNode bestNode = chooseBestNode(child);
-    				TablutBoardState playResult = simRandomPlay(bestNode.getState());
-    				if(playResult.getWinner() == studentPlayer) {
-    					child.setWinningPoints((child.getWinningPoints() + 1));
-    				}
-    			}
-    		}
+    		// run monte carlo tree search on every core if no greedy move exists,
+    		// continuing the trees from the previous turns when they reached this position,
+    		// for as long as the time manager allows this turn
+    		timeManager.startTurn(boardState, startTimeStamp);
     		
-    		// high score from monte carlo sim is returned
-    		return findHighScore(rootNode.getChildren()).recentMove;
+    		// most visited move from the search is returned
+    		Move move = monteCarloSearch.search(boardState, timeManager);
+    		timeManager.endTurn();
+    		return move;
     		
     }
     /**
-     * Find move to win if it exists
-     * 
-     * @param children
-     * @return Move winMove (null if there is no such move)
+     * Called with every move echoed by the server, ours and the opponent's.
+     * Moves the search tree down so its statistics carry over to the next turn,
+     * and after our own moves keeps searching while the opponent thinks.
      */
-    private Move findWinMove(List<TreeNode> children) {
-    		for(TreeNode child : children) {
-    			TablutBoardState boardState = child.getState();
-    			if(boardState.getWinner() == studentPlayer) {
-    				return child.getRecentMove();    			
-			}
+    @Override
+    public void movePlayed(BoardState boardState, Move move) {
+    		TablutBoardState state = (TablutBoardState) boardState;
+    		initialize();
+    		monteCarloSearch.advance(move, state);
+    		if(PONDER && move.getPlayerID() == player_id && !state.gameOver()) {
+    			monteCarloSearch.ponder(state);
     		}
-    		return null;
     }
     
     /**
-     * Find high score node amongst children in random play
-     * 
-     * @param children
-     * @return TreeNode highScore node
+     * Stops pondering once the game is over.
      */
-    private TreeNode findHighScore(List<TreeNode> children) {
-    		TreeNode highScore = children.get(0);
-    		for(TreeNode child: children) {
-    			if(child.getWinningPoints() > highScore.getWinningPoints()) {
-    				highScore = child;
-    			}
+    @Override
+    public void gameOver(String msg, BoardState boardState) {
+    		if(monteCarloSearch != null) {
+    			monteCarloSearch.stop();
     		}
-    		return highScore;
     }
     
     /**
-     * Simulate a random play for Monte Carlo
-     * 
-     * @param boardState
-     * @return TablutBoardState final state of game
+     * Creates the search, with its node pools and threads, and maps the opening
+     * book and endgame tables the first time the game needs them. This is left
+     * out of the constructor, which runs before the game starts.
      */
-    private TablutBoardState simRandomPlay(TablutBoardState boardState) {
-    		TablutBoardState tmpState = (TablutBoardState) boardState.clone();
-    		if(tmpState.gameOver()) {
-    			return boardState;
-    		}
-    		while(!tmpState.gameOver()) {
-    			Random random = new Random();
-    			List<TablutMove> legalMoves = tmpState.getAllLegalMoves();
-    			tmpState.processMove(legalMoves.get(random.nextInt(legalMoves.size())));
+    private void initialize() {
+    		if(monteCarloSearch != null) {
+    			return;
     		}
-    		return tmpState;
+    		monteCarloSearch = new Ponderer(createSearchEngine());
+    		openingBook = OpeningBook.load(OpeningBook.DEFAULT_PATH);
+    		endgameTablebase = EndgameTablebase.load(EndgameTablebase.DEFAULT_DIRECTORY);
     }
     
     /**
-     * Chooses best node based on determined heuristic
+     * Builds the Monte Carlo search the constants above describe
      * 
-     * @param root
-     * @return TreeNode bestNode
+     * @return SearchEngine search
      */
-    private TreeNode chooseBestNode(TreeNode root) {
-    		TreeNode node = root;
-		node.addChildren();
-		int bestHeuristic = -1;
-		TreeNode bestNode = null;
-		for(TreeNode child: root.getChildren()) {
-			int heuristic = determineHeuristic(child);
-			if(heuristic > bestHeuristic) {
-				bestNode = child;
-			}	
-		}
-		return bestNode;
+    private SearchEngine createSearchEngine() {
+    		PlayoutCutoff playoutCutoff = TRUNCATE_PLAYOUTS
+    				? new PlayoutCutoff(PLAYOUT_CUTOFF_PLIES, PLAYOUT_CUTOFF_MATERIAL)
+    				: PlayoutCutoff.NONE;
+    		if(TREE_PARALLEL_SEARCH) {
+    			TreeParallelSearch search = new TreeParallelSearch(EXPLORATION_CONSTANT, VIRTUAL_LOSS,
+    					NUM_SEARCH_THREADS, SWEDE_PLAYOUT_POLICY, MUSCOVITE_PLAYOUT_POLICY);
+    			search.setPlayoutCutoff(playoutCutoff);
+    			return search;
+    		}
+    		RootParallelSearch search = new RootParallelSearch(EXPLORATION_CONSTANT, NUM_SEARCH_THREADS,
+    				MONTE_CARLO_NODES, SWEDE_PLAYOUT_POLICY, MUSCOVITE_PLAYOUT_POLICY);
+    		search.setPlayoutCutoff(playoutCutoff);
+    		search.setRaveEquivalence(RAVE_EQUIVALENCE);
+    		return search;
     }
     
     /**
-     * Determine heuristic found on state of board
+     * Find move to win if it exists.
+     * Each move is tried on a copy with make/unmake.
      * 
-     * @param childNode
-     * @return int total points heuristic
+     * @param boardState
+     * @return Move winMove (null if there is no such move)
      */
-    private int determineHeuristic(TreeNode childNode) {
-    		TablutBoardState boardState = childNode.getState();
-    		// basic heuristic
-    		if(boardState.gameOver()) {
-    			if(boardState.getWinner() == studentPlayer) {
-    				return 10000;
-    			}
-    			if(boardState.getWinner() == opponentPlayer) {
-    				return 0;
+    private Move findWinMove(TablutBoardState boardState) {
+    		TablutBoardState childState = (TablutBoardState) boardState.clone();
+    		int[] moves = new int[TablutBoardState.MAX_LEGAL_MOVES];
+    		int count = childState.getAllLegalMoves(moves);
+    		for(int i = 0; i < count; i++) {
+    			long undo = childState.makeMove(moves[i]);
+    			int winner = childState.getWinner();
+    			childState.unmakeMove(undo);
+    			if(winner == studentPlayer) {
+    				return TablutMove.fromPacked(moves[i]);
     			}
     		}
-    		
-    		int points = 1000;
-    		Coord kingPiece = boardState.getKingPosition();
-    		
-    		// get points for pieces remaining, lose points for opponents pieces remaining
-    		HashSet<Coord> humanPlayerPieces = boardState.getPlayerPieceCoordinates();
-    		HashSet<Coord> opponentPlayerPieces = boardState.getOpponentPieceCoordinates();
-    		points += WEIGHTING_NUM_PCS * humanPlayerPieces.size();
-    		points -= WEIGHTING_NUM_PCS * opponentPlayerPieces.size();
-    		
-    		// get points for being close to king
-    		for(Coord coord: boardState.getPlayerPieceCoordinates()) {
-    			points -= WEIGHTING_PCS_TO_KING * coord.distance(kingPiece);
-    		}
-    		
-    		// lose points for opponent being close to king
-    		for(Coord coord: boardState.getPlayerPieceCoordinates()) {
-    			points -= WEIGHTING_PCS_TO_KING * coord.distance(kingPiece);
-    		}
-    		
-    		// get/lose points for king being close to corner 
-    		if(studentPlayer == TablutBoardState.SWEDE) {
-    			points -= WEIGHTING_KING_DIST * Coordinates.distanceToClosestCorner(kingPiece);
-    		}
-    		else {
-    			points += WEIGHTING_KING_DIST * Coordinates.distanceToClosestCorner(kingPiece);
-    		}
-    		return points;
+    		return null;
     }
     
     /**
      * Finds greedy way to move king closer to corner, 
      * or moving closer to king to protect it
      * 
-     * @param parent
+     * @param boardState
      * @return Move bestMove (null if there is no such move)
      */
-    private Move findGreedyMove(TreeNode parent) {
+    private Move findGreedyMove(TablutBoardState boardState) {
     		Move bestMove = null;
-    		Coord kingPiece = parent.getState().getKingPosition();
+    		Coord kingPiece = boardState.getKingPosition();
     		int minDist = Coordinates.distanceToClosestCorner(kingPiece);
-    		for(TablutMove move: parent.getState().getLegalMovesForPosition(kingPiece)) {
+    		TablutBoardState childState = (TablutBoardState) boardState.clone();
+    		for(TablutMove move: boardState.getLegalMovesForPosition(kingPiece)) {
     			int moveDist = Coordinates.distanceToClosestCorner(move.getEndPosition());
     			if(moveDist < minDist) {
-    				TablutBoardState childState = (TablutBoardState) parent.getState().clone();
-    				childState.processMove(move);
+    				long undo = childState.makeMove(move);
     				if(safeMove(childState)) {
     					minDist = moveDist;
     					bestMove = move;
     				}
+    				childState.unmakeMove(undo);
     			}
     		}
     		return bestMove;
     }
     
     /**
-     * Returns if state is safe after greedy move is made
+     * Returns if state is safe after greedy move is made.
+     * The state is explored with make/unmake and left as it was found.
      * 
      * @param boardState
      * @return boolean
@@ -237,9 +226,9 @@ public class StudentPlayer extends TablutPlayer {
     private boolean safeMove(TablutBoardState boardState) {
     		int originalTotalPcs = boardState.getNumberPlayerPieces(studentPlayer);
     		for(TablutMove move: boardState.getAllLegalMoves()) {
-    				TablutBoardState childState = (TablutBoardState) boardState.clone();
-    				childState.processMove(move);
-    				int newTotalPcs = childState.getNumberPlayerPieces(studentPlayer);
+    				long undo = boardState.makeMove(move);
+    				int newTotalPcs = boardState.getNumberPlayerPieces(studentPlayer);
+    				boardState.unmakeMove(undo);
     				if(originalTotalPcs - newTotalPcs != 0) {
     					return false;
     				}
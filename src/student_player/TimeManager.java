@@ -0,0 +1,133 @@
+package student_player;
+
+import boardgame.Server;
+import tablut.TablutBoardState;
+
+/**
+ * Decides how long each turn is searched. The server plays a random move for a
+ * player that has not answered within its timeout (Server.DEFAULT_TIMEOUT, or
+ * Server.FIRST_MOVE_TIMEOUT for a player's first move), so every turn ends a
+ * safety margin before that. The margin covers the network and the time between
+ * the deadline and chooseMove actually returning, which is measured every turn:
+ * the worst recent overrun, mostly garbage collection and threads finishing
+ * their iteration, is added to a fixed base.
+ *
+ * Time left over from one move is not carried to the next, so the whole budget
+ * is always available. A search can stop before the deadline once the most
+ * visited move cannot be caught by the runner-up in the time left, but not
+ * before a minimum share of the budget that depends on the game phase: the
+ * middle game gets the most, while opening positions are similar from game to
+ * game and late positions are decided by short playouts.
+ */
+public class TimeManager {
+    private static final int SAFETY_MARGIN = 150;
+    private static final int FIRST_MOVE_SAFETY_MARGIN = 1000; // class loading and JIT compilation
+    private static final int MAX_OVERRUN = 500;
+
+    // Minimum share of the budget searched before stopping early, per phase.
+    private static final double OPENING_SHARE = 0.3;
+    private static final double MIDDLE_GAME_SHARE = 0.6;
+    private static final double END_GAME_SHARE = 0.4;
+    private static final int OPENING_TURNS = TablutBoardState.MAX_TURNS / 6;
+    private static final int END_GAME_TURN = TablutBoardState.MAX_TURNS * 3 / 4;
+
+    private final int moveTimeout;
+    private final int firstMoveTimeout;
+    private int overrun = 0;
+    private long startTime;
+    private long deadline;
+    private long earliestStop;
+
+    /**
+     * Uses the server's default timeouts.
+     */
+    public TimeManager() {
+        this(Server.DEFAULT_TIMEOUT, Server.FIRST_MOVE_TIMEOUT);
+    }
+
+    /**
+     * @param moveTimeout
+     *            time the server allows for a move, in milliseconds
+     * @param firstMoveTimeout
+     *            time the server allows for a player's first move
+     */
+    public TimeManager(int moveTimeout, int firstMoveTimeout) {
+        this.moveTimeout = moveTimeout;
+        this.firstMoveTimeout = firstMoveTimeout;
+    }
+
+    /**
+     * Starts timing a turn in the given state, which began at startTime (in
+     * currentTimeMillis terms).
+     */
+    public void startTurn(TablutBoardState boardState, long startTime) {
+        int turn = boardState.getTurnNumber();
+        int budget;
+        if (turn == 0) {
+            budget = firstMoveTimeout - FIRST_MOVE_SAFETY_MARGIN - overrun;
+        } else {
+            budget = moveTimeout - SAFETY_MARGIN - overrun;
+        }
+        budget = Math.max(budget, moveTimeout / 4);
+
+        double share;
+        if (turn < OPENING_TURNS) {
+            share = OPENING_SHARE;
+        } else if (turn < END_GAME_TURN) {
+            share = MIDDLE_GAME_SHARE;
+        } else {
+            share = END_GAME_SHARE;
+        }
+        this.startTime = startTime;
+        this.deadline = startTime + budget;
+        this.earliestStop = startTime + (long) (share * budget);
+    }
+
+    /**
+     * Starts an untimed turn, for a search on the opponent's time that will be
+     * stopped from outside: there is no deadline and no stopping early.
+     */
+    public void startPondering() {
+        startTime = System.currentTimeMillis();
+        deadline = Long.MAX_VALUE;
+        earliestStop = Long.MAX_VALUE;
+    }
+
+    /**
+     * Ends the turn that was started last, measuring how far past the deadline it
+     * went so that the next turns leave room for it.
+     */
+    public void endTurn() {
+        int late = (int) Math.min(MAX_OVERRUN, Math.max(0, System.currentTimeMillis() - deadline));
+        overrun = Math.max(late, overrun / 2); // forget old spikes gradually
+    }
+
+    /**
+     * @return the time (in currentTimeMillis terms) the search of this turn must
+     *         stop at
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Whether the search can stop now, because the runner-up could not catch the
+     * most visited move even if every playout left went to it. The playouts left
+     * are estimated from the rate so far this turn.
+     *
+     * @param bestVisits
+     *            visits of the most visited move
+     * @param secondVisits
+     *            visits of the second most visited move
+     * @param playouts
+     *            playouts run since the turn started
+     */
+    public boolean canStopEarly(int bestVisits, int secondVisits, int playouts) {
+        long now = System.currentTimeMillis();
+        if (now < earliestStop) {
+            return false;
+        }
+        double rate = (double) playouts / Math.max(1, now - startTime);
+        return bestVisits - secondVisits > rate * (deadline - now);
+    }
+}
@@ -0,0 +1,146 @@
+package student_player;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results, kept in two preallocated long
+ * arrays so that it costs nothing to the garbage collector. Each slot holds two
+ * entries: the first is only replaced by a search at least as deep (or by any
+ * search once it is left over from an earlier move), and the second always
+ * takes the latest result that did not go to the first.
+ *
+ * The table can be shared by several search threads without locks. Each key
+ * is stored XORed with its entry, so an entry whose two halves were written by
+ * different threads fails the key check on probe and reads as a miss.
+ *
+ * An entry is packed into one long:
+ * <ul>
+ * <li>bits 0-15: best move, packed as by TablutMove, or 0xFFFF if none</li>
+ * <li>bits 16-23: depth searched</li>
+ * <li>bits 24-25: bound type, never 0 so an empty entry reads as a miss</li>
+ * <li>bits 26-31: generation, the value of a counter bumped by newSearch</li>
+ * <li>bits 32-63: score</li>
+ * </ul>
+ */
+public class TranspositionTable {
+    public static final int EXACT = 1; // the score is exact
+    public static final int LOWER_BOUND = 2; // the search failed high, the score is at least this
+    public static final int UPPER_BOUND = 3; // the search failed low, the score is at most this
+
+    public static final int NO_MOVE = -1;
+
+    private static final int BYTES_PER_SLOT = 4 * 8; // two keys and two entries
+    private static final long MOVE_MASK = 0xFFFF;
+    private static final int DEPTH_SHIFT = 16;
+    private static final int BOUND_SHIFT = 24;
+    private static final int GENERATION_SHIFT = 26;
+    private static final int GENERATION_MASK = 0x3F;
+    private static final int SCORE_SHIFT = 32;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int slotMask;
+    private volatile int generation = 0;
+
+    /**
+     * @param sizeInMegabytes
+     *            memory to use, rounded down to a power of two number of slots.
+     *            Clients run with a 520 MB heap, so this should stay well below
+     *            that.
+     */
+    public TranspositionTable(int sizeInMegabytes) {
+        long slots = Long.highestOneBit(Math.max(1, (sizeInMegabytes * (1L << 20)) / BYTES_PER_SLOT));
+        slots = Math.min(slots, 1 << 29); // keep 2 * slots a valid array size
+        keys = new long[(int) (2 * slots)];
+        entries = new long[(int) (2 * slots)];
+        slotMask = (int) slots - 1;
+    }
+
+    /**
+     * Marks the start of a new search, so that deep entries from earlier searches
+     * can be replaced.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & GENERATION_MASK;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+    }
+
+    /**
+     * @return the entry stored for the position with this hash key, or 0 if there
+     *         is none
+     */
+    public long probe(long key) {
+        int index = (int) key & slotMask;
+        index += index;
+        long entry = entries[index];
+        if ((keys[index] ^ entry) == key && entry != 0) {
+            return entry;
+        }
+        entry = entries[index + 1];
+        if ((keys[index + 1] ^ entry) == key && entry != 0) {
+            return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result for the position with this hash key.
+     *
+     * @param move
+     *            best move found, packed, or NO_MOVE
+     * @param depth
+     *            remaining depth the position was searched to
+     * @param bound
+     *            EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score
+     *            score of the position for the player to move
+     */
+    public void store(long key, int move, int depth, int bound, int score) {
+        long entry = (move & MOVE_MASK) | ((long) Math.min(depth, 0xFF) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT) | ((long) generation << GENERATION_SHIFT)
+                | ((long) score << SCORE_SHIFT);
+        int index = (int) key & slotMask;
+        index += index;
+        long current = entries[index];
+        boolean sameKey = (keys[index] ^ current) == key;
+        if (sameKey || current == 0 || depth >= getDepth(current) || getGeneration(current) != generation) {
+            // Keep the previous best move when the new result has none.
+            if (move == NO_MOVE && sameKey && current != 0) {
+                entry = (entry & ~MOVE_MASK) | (current & MOVE_MASK);
+            }
+            keys[index] = key ^ entry;
+            entries[index] = entry;
+        } else {
+            keys[index + 1] = key ^ entry;
+            entries[index + 1] = entry;
+        }
+    }
+
+    public static int getMove(long entry) {
+        int move = (int) (entry & MOVE_MASK);
+        return (move == MOVE_MASK) ? NO_MOVE : move;
+    }
+
+    public static int getDepth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int getBound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 0x3;
+    }
+
+    public static int getScore(long entry) {
+        return (int) (entry >>> SCORE_SHIFT);
+    }
+
+    private static int getGeneration(long entry) {
+        return (int) (entry >>> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+}
@@ -1,12 +1,13 @@
 package student_player;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import boardgame.Board;
 import boardgame.Move;
-import tablut.TablutBoard;
 import tablut.TablutBoardState;
 import tablut.TablutMove;
 
@@ -15,13 +16,41 @@ import tablut.TablutMove;
  * @author puranik9
  *
  * This class is used to represent a Tree Node
+ *
+ * Nodes made by the search only store their (packed) move. Their state is
+ * rebuilt by replaying moves from the root, which is the only node that has to
+ * hold a board state, and their moves are generated the first time they are
+ * expanded.
+ *
+ * Nodes can be shared by several search threads. Visits and win points are
+ * packed into one long and updated with atomic adds, expansion takes the node's
+ * lock, and children are published through a volatile count so readers never
+ * need it.
  */
 
 public class TreeNode {
-	TablutBoardState boardState;
-    List<TreeNode> children;
-    Move recentMove;
-    int winPoints = 0;
+    // Points given to a node for each playout through it, from the point of view of
+    // the player who made the node's move.
+    static final int WIN_POINTS = 2;
+    static final int DRAW_POINTS = 1;
+
+    // Visits are kept in the high half of stats and win points in the low half.
+    private static final long ONE_VISIT = 1L << 32;
+    private static final AtomicLongFieldUpdater<TreeNode> STATS = AtomicLongFieldUpdater.newUpdater(TreeNode.class,
+            "stats");
+    private static final TreeNode[] NO_CHILDREN = new TreeNode[0];
+
+	TablutBoardState boardState; // null for nodes made by expand
+    TreeNode parent;
+    // Written before childCount, so reading childCount first shows that many children.
+    volatile TreeNode[] children = NO_CHILDREN;
+    volatile int childCount = 0;
+    int[] untriedMoves; // packed, null until the node is first expanded; guarded by this
+    int untriedCount = 0;
+    volatile boolean fullyExpanded = false;
+    int recentMove; // packed, -1 for a root
+    int movingPlayer;
+    volatile long stats = 0;
 
     /**
      * 
@@ -30,22 +59,176 @@ public class TreeNode {
      * @param move
      */
     public TreeNode(TreeNode parent, TablutBoardState boardState, Move move){
+        this.parent = parent;
         this.boardState = boardState;
+        this.recentMove = (move == null) ? -1 : ((TablutMove) move).toPacked();
+        this.movingPlayer = (boardState.getTurnPlayer() == TablutBoardState.MUSCOVITE) ? TablutBoardState.SWEDE
+                : TablutBoardState.MUSCOVITE;
+    }
+
+    /**
+     * Child made by expand, holding only its move.
+     */
+    private TreeNode(TreeNode parent, int move) {
+        this.parent = parent;
         this.recentMove = move;
+        this.movingPlayer = TablutMove.getPackedPlayer(move);
     }
 
     /**
-     * 
+     * Expands every child at once.
      */
-    public void addChildren() {
-        children = new ArrayList<TreeNode>();
+    public synchronized void addChildren() {
         List<TablutMove> choices = boardState.getAllLegalMoves();
+        children = new TreeNode[choices.size()];
+        childCount = 0;
         for(TablutMove move : choices) {
             TablutBoardState childState = (TablutBoardState) boardState.clone();
             childState.processMove(move);
-            TreeNode child = new TreeNode(this, childState, move);
-            children.add(child);
+            addChild(new TreeNode(this, childState, move));
         }
+        untriedMoves = new int[0];
+        untriedCount = 0;
+        fullyExpanded = true;
+    }
+
+    /**
+     * Adds a child for one random untried move. The given state must be this
+     * node's position; it is only used to generate the moves the first time, and
+     * the child's move is left for the caller to play. Returns the new child, or
+     * this node if the game is over here or another thread expanded the last
+     * move first.
+     *
+     * @param state
+     * @param random
+     * @param moveBuffer scratch space for move generation
+     * @return TreeNode child
+     */
+    public synchronized TreeNode expand(TablutBoardState state, SplittableRandom random, int[] moveBuffer) {
+        if(untriedMoves == null) {
+            untriedCount = state.gameOver() ? 0 : state.getAllLegalMoves(moveBuffer);
+            untriedMoves = Arrays.copyOf(moveBuffer, untriedCount);
+            children = new TreeNode[untriedCount];
+        }
+        if(untriedCount == 0) {
+            fullyExpanded = true;
+            return this;
+        }
+        int index = random.nextInt(untriedCount);
+        int move = untriedMoves[index];
+        untriedMoves[index] = untriedMoves[--untriedCount];
+
+        TreeNode child = new TreeNode(this, move);
+        addChild(child);
+        if(untriedCount == 0) {
+            untriedMoves = new int[0];
+            fullyExpanded = true;
+        }
+        return child;
+    }
+
+    // Caller holds the lock, so the array always has room for every move.
+    private void addChild(TreeNode child) {
+        TreeNode[] current = children;
+        int count = childCount;
+        current[count] = child;
+        children = current;
+        childCount = count + 1;
+    }
+
+    /**
+     * Picks the child maximizing UCB1: its average score plus an exploration term
+     * that grows for children visited less often than their siblings. A child
+     * that has no visits yet (only possible while another thread is still playing
+     * out from it) is picked straight away.
+     *
+     * @param explorationConstant
+     * @return TreeNode best child
+     */
+    public TreeNode selectChild(double explorationConstant) {
+        int count = childCount;
+        TreeNode[] nodes = children;
+        double logVisits = Math.log(getVisits());
+        TreeNode best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++) {
+            TreeNode child = nodes[i];
+            long childStats = child.stats;
+            int childVisits = (int) (childStats >>> 32);
+            if(childVisits == 0) {
+                return child;
+            }
+            double value = (int) childStats / (double) (WIN_POINTS * childVisits)
+                    + explorationConstant * Math.sqrt(logVisits / childVisits);
+            if(value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Records the outcome of one playout through this node.
+     *
+     * @param winner the winner of the playout
+     */
+    public void update(int winner) {
+        update(winner, 0);
+    }
+
+    /**
+     * Records the outcome of one playout through this node and takes back the
+     * virtual loss that was added when the playout selected it.
+     *
+     * @param winner the winner of the playout
+     * @param virtualLoss the amount passed to addVirtualLoss, or 0
+     */
+    public void update(int winner, int virtualLoss) {
+        int points = 0;
+        if(winner == movingPlayer) {
+            points = WIN_POINTS;
+        } else if(winner == Board.DRAW) {
+            points = DRAW_POINTS;
+        }
+        STATS.getAndAdd(this, (1 - virtualLoss) * ONE_VISIT + points);
+    }
+
+    /**
+     * Counts pending lost playouts through this node, so that other threads
+     * selecting from the same parent are steered elsewhere until update removes
+     * them.
+     *
+     * @param virtualLoss number of lost visits to add
+     */
+    public void addVirtualLoss(int virtualLoss) {
+        STATS.getAndAdd(this, virtualLoss * ONE_VISIT);
+    }
+
+    /**
+     *
+     * @return the player who made the move leading to this node
+     */
+    public int getMovingPlayer() {
+        return movingPlayer;
+    }
+
+    /**
+     *
+     * @return average score of the playouts through this node, between 0 and 1
+     */
+    public double getValue() {
+        long current = stats;
+        int visits = (int) (current >>> 32);
+        return (visits == 0) ? 0 : (int) current / (double) (WIN_POINTS * visits);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isFullyExpanded() {
+        return fullyExpanded;
     }
     
     /**
@@ -53,7 +236,16 @@ public class TreeNode {
      * @return
      */
     public List<TreeNode> getChildren() {
-    		return children;
+    		int count = childCount;
+    		return Collections.unmodifiableList(Arrays.asList(children).subList(0, count));
+    }
+
+    /**
+     *
+     * @return number of children expanded so far
+     */
+    public int getChildCount() {
+    		return childCount;
     }
     
     /**
@@ -63,15 +255,40 @@ public class TreeNode {
 	public TablutBoardState getState() {
 		return boardState;
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @return
 	 */
-	public TreeNode getRandomChild() {
-		Random random = new Random();
-		int rand = random.nextInt(children.size());
-		return children.get(rand);
+	public TreeNode getParent() {
+		return parent;
+	}
+
+	/**
+	 * Detaches this node from its parent so it can serve as the root of a new
+	 * search, dropping the rest of the old tree.
+	 *
+	 * @param state this node's position
+	 */
+	public void makeRoot(TablutBoardState state) {
+		parent = null;
+		boardState = state;
+	}
+
+	/**
+	 *
+	 * @param packedMove
+	 * @return the child reached by the move, or null if it was never expanded
+	 */
+	public TreeNode getChild(int packedMove) {
+		int count = childCount;
+		TreeNode[] nodes = children;
+		for(int i = 0; i < count; i++) {
+			if(nodes[i].recentMove == packedMove) {
+				return nodes[i];
+			}
+		}
+		return null;
 	}
 	
 	/**
@@ -79,15 +296,15 @@ public class TreeNode {
 	 * @return
 	 */
 	public int getWinningPoints() {
-		return winPoints;
+		return (int) stats;
 	}
-	
+
 	/**
-	 * 
-	 * @param points
+	 *
+	 * @return
 	 */
-	public void setWinningPoints(int points) {
-		this.winPoints = points;
+	public int getVisits() {
+		return (int) (stats >>> 32);
 	}
 	
 	/**
@@ -95,6 +312,14 @@ public class TreeNode {
 	 * @return
 	 */
 	public Move getRecentMove() {
+		return (recentMove < 0) ? null : TablutMove.fromPacked(recentMove);
+	}
+
+	/**
+	 *
+	 * @return the move leading to this node, packed
+	 */
+	public int getPackedMove() {
 		return recentMove;
 	}
 	
@@ -0,0 +1,165 @@
+package student_player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import boardgame.Move;
+import tablut.TablutBoardState;
+
+/**
+ * Tree-parallel Monte Carlo tree search. All workers grow one shared tree, each
+ * playing its iterations on its own copy of the root's state. Node statistics
+ * are updated atomically by TreeNode, and every worker adds a virtual loss to
+ * the nodes it selects so that workers descending at the same time spread over
+ * different lines instead of all following the current best one.
+ *
+ * Unlike root parallelism the workers pool their playouts in one tree, so the
+ * tree grows deeper, at the cost of contention on the nodes near the root.
+ */
+public class TreeParallelSearch implements SearchEngine {
+    private static final int CHECK_INTERVAL = 10; // milliseconds between early stop checks
+
+    private final MonteCarloSearch[] searches;
+    private final ExecutorService executor;
+    private TreeNode root;
+    private volatile boolean stopped;
+
+    /**
+     * @param explorationConstant
+     *            UCB1 exploration constant used by every worker
+     * @param virtualLoss
+     *            lost visits a worker adds to each node it selects until its
+     *            playout is backed up
+     * @param numThreads
+     *            number of workers sharing the tree. The calling thread is one of
+     *            them.
+     */
+    public TreeParallelSearch(double explorationConstant, int virtualLoss, int numThreads) {
+        this(explorationConstant, virtualLoss, numThreads, PlayoutPolicy.Kind.UNIFORM, PlayoutPolicy.Kind.UNIFORM);
+    }
+
+    /**
+     * Same as the constructor above, with playout policies other than uniform.
+     *
+     * @param swedePolicy
+     *            policy picking the swedes' moves in every worker's playouts
+     * @param muscovitePolicy
+     *            policy picking the muscovites' moves in every worker's playouts
+     */
+    public TreeParallelSearch(double explorationConstant, int virtualLoss, int numThreads,
+            PlayoutPolicy.Kind swedePolicy, PlayoutPolicy.Kind muscovitePolicy) {
+        searches = new MonteCarloSearch[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            searches[i] = new MonteCarloSearch(explorationConstant, virtualLoss, swedePolicy, muscovitePolicy);
+        }
+        executor = (numThreads > 1) ? Executors.newFixedThreadPool(numThreads - 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "mcts-worker");
+                thread.setDaemon(true); // don't keep the client alive once the game ends
+                return thread;
+            }
+        }) : null;
+    }
+
+    /**
+     * Searches the given state with every worker until the time manager lets it
+     * stop, and returns the most visited move. The state is not modified.
+     */
+    @Override
+    public Move search(TablutBoardState boardState, TimeManager timeManager) {
+        final long deadline = timeManager.getDeadline();
+        if (root == null || root.getState().getHashKey() != boardState.getHashKey()) {
+            root = searches[0].createRoot(boardState);
+        }
+        int startVisits = root.getVisits();
+        stopped = false;
+
+        final TreeNode sharedRoot = root;
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 1; i < searches.length; i++) {
+            final MonteCarloSearch search = searches[i];
+            final TablutBoardState state = (TablutBoardState) sharedRoot.getState().clone();
+            workers.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    long now;
+                    while (!stopped && (now = System.currentTimeMillis()) < deadline) {
+                        search.search(sharedRoot, state, Math.min(deadline, now + CHECK_INTERVAL));
+                    }
+                }
+            }));
+        }
+        long now;
+        while (!stopped && (now = System.currentTimeMillis()) < deadline) {
+            searches[0].search(sharedRoot, Math.min(deadline, now + CHECK_INTERVAL));
+            if (canStopEarly(timeManager, sharedRoot.getVisits() - startVisits)) {
+                break;
+            }
+        }
+        stopped = true;
+        for (Future<?> future : workers) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A search worker failed.", e.getCause());
+            }
+        }
+        return searches[0].getBestMove(sharedRoot);
+    }
+
+    /**
+     * Stops a search running on another thread. A search that has not started its
+     * workers yet would clear this, so callers should repeat it until the search
+     * returns.
+     */
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Has every worker stop its playouts by the given cutoff, see
+     * MonteCarloSearch.setPlayoutCutoff.
+     */
+    public void setPlayoutCutoff(PlayoutCutoff playoutCutoff) {
+        for (MonteCarloSearch search : searches) {
+            search.setPlayoutCutoff(playoutCutoff);
+        }
+    }
+
+    /**
+     * Moves the shared tree down by a move that was played, see
+     * MonteCarloSearch.advance.
+     */
+    @Override
+    public void advance(Move move, TablutBoardState boardState) {
+        if (root != null) {
+            root = searches[0].advance(root, move, boardState);
+        }
+    }
+
+    // Whether the time manager lets the search stop with the current visits of
+    // the root children.
+    private boolean canStopEarly(TimeManager timeManager, int playouts) {
+        int best = 0;
+        int second = 0;
+        for (TreeNode child : root.getChildren()) {
+            int visits = child.getVisits();
+            if (visits > best) {
+                second = best;
+                best = visits;
+            } else if (visits > second) {
+                second = visits;
+            }
+        }
+        return timeManager.canStopEarly(best, second, playouts);
+    }
+}
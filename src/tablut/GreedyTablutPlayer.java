@@ -31,17 +31,19 @@ public class GreedyTablutPlayer extends TablutPlayer {
         int minNumberOfOpponentPieces = bs.getNumberPlayerPieces(opponent);
         boolean moveCaptures = false;
 
+        // To evaluate moves, clone the boardState once so that we can do modifications
+        // on it. Each move is undone before trying the next one.
+        TablutBoardState cloneBS = (TablutBoardState) bs.clone();
+
         // Iterate over move options and evaluate them.
         for (TablutMove move : options) {
-            // To evaluate a move, clone the boardState so that we can do modifications on
-            // it.
-            TablutBoardState cloneBS = (TablutBoardState) bs.clone();
-
             // Process that move, as if we actually made it happen.
-            cloneBS.processMove(move);
+            long undo = cloneBS.makeMove(move);
 
             // Check how many opponent pieces there are now, maybe we captured some!
             int newNumberOfOpponentPieces = cloneBS.getNumberPlayerPieces(opponent);
+            int newWinner = cloneBS.getWinner();
+            cloneBS.unmakeMove(undo);
 
             // If this move caused some capturing to happen, then do it! Greedy!
             if (newNumberOfOpponentPieces < minNumberOfOpponentPieces) {
@@ -56,7 +58,7 @@ public class GreedyTablutPlayer extends TablutPlayer {
              * white can move to a corner, since if either of these things happen then a
              * winner will be set.
              */
-            if (cloneBS.getWinner() == player_id) {
+            if (newWinner == player_id) {
                 bestMove = move;
                 moveCaptures = true;
                 break;
@@ -0,0 +1,15 @@
+package tablut;
+
+/**
+ * Weighs the legal moves of a position, so that playouts can sample moves with
+ * TablutBoardState.sampleRandomMove(SplittableRandom, MovePolicy) instead of
+ * uniformly. Moves are passed packed, see TablutMove.pack.
+ */
+public interface MovePolicy {
+    /**
+     * Returns the relative weight of the move in the given state. Weights must not
+     * be negative; a move of weight 0 is never picked unless every move has weight
+     * 0, in which case the pick is uniform.
+     */
+    int weight(TablutBoardState boardState, int packedMove);
+}
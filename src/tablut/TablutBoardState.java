@@ -5,15 +5,16 @@ import boardgame.BoardState;
 import boardgame.Move;
 import coordinates.Coord;
 import coordinates.Coordinates;
-import coordinates.Coordinates.CoordinateDoesNotExistException;
 import tablut.TablutMove;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 public class TablutBoardState extends BoardState {
 
@@ -23,13 +24,14 @@ public class TablutBoardState extends BoardState {
     public static final int MUSCOVITE = 0;
     public static final int BOARD_SIZE = 9; // 9x9 board for tablut
     public static final int MAX_TURNS = 49;
+    public static final int MAX_LEGAL_MOVES = 256; // 16 muscovites with at most 16 moves each
 
     public static enum Piece {
         BLACK, WHITE, KING, EMPTY
     }
 
     private static HashMap<Piece, String> piecesToSymbols;
-    private static HashMap<Piece, Integer> piecesToPlayer;
+    private static final int[] PIECE_OWNERS = new int[Piece.values().length]; // player owning each piece
     static {
         piecesToSymbols = new HashMap<>();
         piecesToSymbols.put(Piece.BLACK, "B");
@@ -37,85 +39,177 @@ public class TablutBoardState extends BoardState {
         piecesToSymbols.put(Piece.KING, "K");
         piecesToSymbols.put(Piece.EMPTY, " ");
 
-        piecesToPlayer = new HashMap<>();
-        piecesToPlayer.put(Piece.BLACK, MUSCOVITE);
-        piecesToPlayer.put(Piece.WHITE, SWEDE);
-        piecesToPlayer.put(Piece.KING, SWEDE);
-        piecesToPlayer.put(Piece.EMPTY, ILLEGAL);
+        PIECE_OWNERS[Piece.BLACK.ordinal()] = MUSCOVITE;
+        PIECE_OWNERS[Piece.WHITE.ordinal()] = SWEDE;
+        PIECE_OWNERS[Piece.KING.ordinal()] = SWEDE;
+        PIECE_OWNERS[Piece.EMPTY.ordinal()] = ILLEGAL;
 
         Coordinates.setAllCoordinates(BOARD_SIZE);
     }
 
     private static int FIRST_PLAYER = 0; // first player white, second player black
 
-    /* These are our data storage things. */
-    private Piece[][] board = new Piece[BOARD_SIZE][BOARD_SIZE];
-    private HashSet<Coord> muscoviteCoords; // we can use hashsets because
-    private HashSet<Coord> swedeCoords;
+    /*
+     * Layout of the undo records returned by makeMove: the start and end squares,
+     * a bit for every direction around the end square in which a piece was
+     * captured, whether one of those was the king (and in which direction), and
+     * the previous winner.
+     */
+    private static final long UNDO_SQUARE_MASK = 0x7F;
+    private static final int UNDO_TO_SHIFT = 7;
+    private static final int UNDO_CAPTURES_SHIFT = 14;
+    private static final long UNDO_KING_CAPTURED = 1L << 18;
+    private static final int UNDO_KING_DIRECTION_SHIFT = 19;
+    private static final int UNDO_WINNER_SHIFT = 32;
+
+    /*
+     * Zobrist keys. A position's hash is the XOR of one random key per occupied
+     * square (chosen by piece type), plus SIDE_TO_MOVE_KEY when the Swedes are to
+     * play. The generator is seeded so keys are stable across runs, which lets
+     * hashes be written to files.
+     */
+    public static final int TURN_BUCKET_SIZE = 8;
+    private static final long[][] PIECE_KEYS = new long[3][BOARD_SIZE * BOARD_SIZE];
+    private static final long SIDE_TO_MOVE_KEY;
+    private static final long[] TURN_BUCKET_KEYS = new long[MAX_TURNS / TURN_BUCKET_SIZE + 2];
+    static {
+        Random keyRand = new Random(0x5EED1917L);
+        for (long[] keys : PIECE_KEYS) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = keyRand.nextLong();
+            }
+        }
+        SIDE_TO_MOVE_KEY = keyRand.nextLong();
+        for (int i = 0; i < TURN_BUCKET_KEYS.length; i++) {
+            TURN_BUCKET_KEYS[i] = keyRand.nextLong();
+        }
+    }
+
+    /*
+     * Bitboards. A set of squares is a pair of longs: bit i of the "lo" long
+     * stands for the square of index i (see Coordinates.getIndex) for squares 0
+     * to 63, and bit i - 64 of the "hi" long for squares 64 to 80. Java shifts a
+     * long by the count mod 64, so 1L << i is square i's bit in either half.
+     */
+    private static final int NUM_SQUARES = BOARD_SIZE * BOARD_SIZE;
+    private static final long HI_MASK = (1L << (NUM_SQUARES - 64)) - 1;
+    private static final long CENTER_BIT = 1L << (NUM_SQUARES / 2); // the center is in the low half
+    private static final long NOT_FIRST_COLUMN_LO, NOT_FIRST_COLUMN_HI; // squares with y > 0
+    private static final long NOT_LAST_COLUMN_LO, NOT_LAST_COLUMN_HI; // squares with y < BOARD_SIZE - 1
+    private static final long RESTRICTED_LO, RESTRICTED_HI; // the corners and the center, for the king only
+    // Change of square index for one step in each direction of Coordinates.
+    private static final int[] DIRECTION_OFFSETS = { -BOARD_SIZE, -1, BOARD_SIZE, 1 };
+    static {
+        long notFirstLo = 0, notFirstHi = 0, notLastLo = 0, notLastHi = 0, restrictedLo = 0, restrictedHi = 0;
+        for (Coord c : Coordinates.iterCoordinates()) {
+            int index = Coordinates.getIndex(c);
+            long bit = 1L << index;
+            if (c.y > 0) {
+                if (index < 64)
+                    notFirstLo |= bit;
+                else
+                    notFirstHi |= bit;
+            }
+            if (c.y < BOARD_SIZE - 1) {
+                if (index < 64)
+                    notLastLo |= bit;
+                else
+                    notLastHi |= bit;
+            }
+            if (Coordinates.isCorner(c) || Coordinates.isCenter(c)) {
+                if (index < 64)
+                    restrictedLo |= bit;
+                else
+                    restrictedHi |= bit;
+            }
+        }
+        NOT_FIRST_COLUMN_LO = notFirstLo;
+        NOT_FIRST_COLUMN_HI = notFirstHi;
+        NOT_LAST_COLUMN_LO = notLastLo;
+        NOT_LAST_COLUMN_HI = notLastHi;
+        RESTRICTED_LO = restrictedLo;
+        RESTRICTED_HI = restrictedHi;
+    }
+
+    /* These are our data storage things: one bitboard per piece type. */
+    private long blackLo, blackHi; // muscovites
+    private long whiteLo, whiteHi; // swedes other than the king
+    private long kingLo, kingHi;
     private Coord kingPosition;
     private Random rand = new Random(1917);
     private int turnPlayer;
     private int turnNumber = 0;
     private int winner = Board.NOBODY;
+    private long hashKey;
 
     // Initial Board State creation. The genesis constructor.
     public TablutBoardState() {
         super();
 
-        // Initialize to empty
-        for (Coord c : Coordinates.iterCoordinates()) {
-            board[c.x][c.y] = Piece.EMPTY;
-        }
-
         /* We now place the pieces on the board */
         int middlePosition = 4;
-        board[middlePosition][middlePosition] = Piece.KING;
+        putPiece(Piece.KING, middlePosition, middlePosition);
 
         // Blacks. (Muscovites)
         List<Integer> blackSidePieces = Arrays.asList(3, 4, 5);
         List<Integer> axes = Arrays.asList(0, 8);
         for (Integer axis : axes) {
             for (Integer position : blackSidePieces) {
-                board[position][axis] = Piece.BLACK;
-                board[axis][position] = Piece.BLACK;
+                putPiece(Piece.BLACK, position, axis);
+                putPiece(Piece.BLACK, axis, position);
             }
         }
         axes = Arrays.asList(1, 7);
         for (Integer axis : axes) {
-            board[axis][middlePosition] = Piece.BLACK;
-            board[middlePosition][axis] = Piece.BLACK;
+            putPiece(Piece.BLACK, axis, middlePosition);
+            putPiece(Piece.BLACK, middlePosition, axis);
         }
         // Whites. (Swedes)
         axes = Arrays.asList(2, 3, 5, 6);
         for (Integer axis : axes) {
-            board[axis][middlePosition] = Piece.WHITE;
-            board[middlePosition][axis] = Piece.WHITE;
-        }
-        // Update the lists storing the coordinates of all the pieces.
-        swedeCoords = new HashSet<>();
-        muscoviteCoords = new HashSet<>();
-        for (Coord c : Coordinates.iterCoordinates()) {
-            Piece piece = getPieceAt(c);
-            if (piecesToPlayer.get(piece) == SWEDE) {
-                swedeCoords.add(c);
-            } else if (piecesToPlayer.get(piece) == MUSCOVITE) {
-                muscoviteCoords.add(c);
-            }
+            putPiece(Piece.WHITE, axis, middlePosition);
+            putPiece(Piece.WHITE, middlePosition, axis);
         }
         kingPosition = Coordinates.get(4, 4);
+        hashKey = computeHashKey();
     }
 
     /* The below method is for the purpose of cloning. */
     private TablutBoardState(TablutBoardState boardState) {
-        for (Coord c : Coordinates.iterCoordinates()) {
-            board[c.x][c.y] = boardState.board[c.x][c.y];
-        }
-        swedeCoords = new HashSet<>(boardState.swedeCoords);
-        muscoviteCoords = new HashSet<>(boardState.muscoviteCoords);
+        blackLo = boardState.blackLo;
+        blackHi = boardState.blackHi;
+        whiteLo = boardState.whiteLo;
+        whiteHi = boardState.whiteHi;
+        kingLo = boardState.kingLo;
+        kingHi = boardState.kingHi;
         kingPosition = boardState.kingPosition;
         turnPlayer = boardState.turnPlayer;
         turnNumber = boardState.turnNumber;
         winner = boardState.getWinner(); 
+        hashKey = boardState.hashKey;
+    }
+
+    /**
+     * Builds an arbitrary position, for tools that need more than the positions
+     * reached from the genesis state, like the endgame table generator. Every
+     * piece must be on a square it is allowed on. The winner is worked out as
+     * after a move, so a position that is already over (the king on a corner, or
+     * a player without a legal move) reports it.
+     */
+    public TablutBoardState(Coord king, Collection<Coord> swedes, Collection<Coord> muscovites, int turnPlayer,
+            int turnNumber) {
+        putPiece(Piece.KING, king.x, king.y);
+        for (Coord c : swedes) {
+            putPiece(Piece.WHITE, c.x, c.y);
+        }
+        for (Coord c : muscovites) {
+            putPiece(Piece.BLACK, c.x, c.y);
+        }
+        kingPosition = king;
+        this.turnPlayer = turnPlayer;
+        this.turnNumber = turnNumber;
+        hashKey = computeHashKey();
+        updateWinner();
     }
 
     @Override
@@ -130,28 +224,153 @@ public class TablutBoardState extends BoardState {
         if (!isLegal(m)) { // isLegal checks if the player is the correct player.
             throw new IllegalArgumentException("Invalid move for current context. " + "Move: " + m.toPrettyString());
         }
+        makeMove(m);
+    }
+
+    /**
+     * Plays a move without checking that it is legal, and returns a record that
+     * unmakeMove can use to take it back. This lets a search explore moves on a
+     * single state instead of cloning the board for every candidate:
+     *
+     * long undo = state.makeMove(move);
+     * ... look at the resulting state ...
+     * state.unmakeMove(undo);
+     *
+     * Moves must be unmade in the reverse order they were made.
+     */
+    public long makeMove(TablutMove m) {
+        return makeMove(m.getStartPosition(), m.getEndPosition());
+    }
 
-        // Process move...
-        Coord oldPos = m.getStartPosition();
-        Coord newPos = m.getEndPosition();
+    // Same as makeMove(TablutMove), for a move packed with TablutMove.pack.
+    public long makeMove(int packedMove) {
+        return makeMove(TablutMove.getPackedStart(packedMove), TablutMove.getPackedEnd(packedMove));
+    }
+
+    private long makeMove(Coord oldPos, Coord newPos) {
         Piece movingPiece = getPieceAt(oldPos);
+        long undo = ((long) winner << UNDO_WINNER_SHIFT) | (Coordinates.getIndex(newPos) << UNDO_TO_SHIFT)
+                | Coordinates.getIndex(oldPos);
 
-        // Get memory address to the list we are working on, then update it.
-        HashSet<Coord> playerCoordSet = getPlayerCoordSet();
-        playerCoordSet.remove(oldPos); // We can do this remove
-        playerCoordSet.add(newPos);
         if (movingPiece == Piece.KING)
             kingPosition = newPos;
 
         // Now update board.
-        board[oldPos.x][oldPos.y] = Piece.EMPTY;
-        board[newPos.x][newPos.y] = movingPiece;
-
-        // Now check if a capture occurred. Only a piece next to the new position could
-        // have been captured.
-        List<Coord> captured = new ArrayList<>();
-        for (Coord enemy : Coordinates.getNeighbors(newPos)) {
-            if (isOpponentPieceAt(enemy)) {
+        togglePiece(movingPiece, Coordinates.getIndex(oldPos));
+        togglePiece(movingPiece, Coordinates.getIndex(newPos));
+        hashKey ^= pieceKey(movingPiece, oldPos) ^ pieceKey(movingPiece, newPos) ^ SIDE_TO_MOVE_KEY;
+
+        // Now check if a capture occurred. Captures are remembered by the direction
+        // they happened in.
+        int capturedDirections = getCapturedDirections(oldPos, newPos);
+
+        // Slaughter the captured enemies... like pigs. Or more like remove object
+        // memory addresses... same thing.
+        // Note, it is possible for multiple pieces to be captured at once.
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            if ((capturedDirections & (1 << dir)) == 0)
+                continue;
+            Coord capturedCoord = Coordinates.getNeighbor(newPos, dir);
+            Piece capturedPiece = getPieceAt(capturedCoord);
+            if (capturedPiece == Piece.KING) {
+                kingPosition = null;
+                undo |= UNDO_KING_CAPTURED | ((long) dir << UNDO_KING_DIRECTION_SHIFT);
+            } // the king has been captured!
+            hashKey ^= pieceKey(capturedPiece, capturedCoord);
+            togglePiece(capturedPiece, Coordinates.getIndex(capturedCoord));
+        }
+        undo |= (long) capturedDirections << UNDO_CAPTURES_SHIFT;
+
+        // Update internal variables, winner, turn player, and turn number.
+        if (turnPlayer != FIRST_PLAYER) {
+            turnNumber += 1;
+        }
+        turnPlayer = getOpponent();
+        updateWinner(); // Check if anybody won and update internal variables if so.
+        return undo;
+    }
+
+    /**
+     * Number of opponent pieces the given move, packed with TablutMove.pack, would
+     * capture if the player to move played it. The board is not changed.
+     */
+    public int getCaptureCount(int packedMove) {
+        return Integer.bitCount(
+                getCapturedDirections(TablutMove.getPackedStart(packedMove), TablutMove.getPackedEnd(packedMove)));
+    }
+
+    /**
+     * Fills counts, indexed by square, with the number of opponent pieces a piece
+     * of the player to move would capture by moving to that square. This is
+     * getCaptureCount for every move at once, found from the opponent's pieces
+     * rather than from each move. The one difference is the king in or next to the
+     * center, which needs attackers on all sides: it is never counted here, so
+     * getCaptureCount should be used for muscovite moves next to it.
+     */
+    public void getCaptureCounts(byte[] counts) {
+        Arrays.fill(counts, (byte) 0);
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            for (long bits = getCaptureLandingsLo(dir); bits != 0; bits &= bits - 1)
+                counts[Long.numberOfTrailingZeros(bits)]++;
+            for (long bits = getCaptureLandingsHi(dir); bits != 0; bits &= bits - 1)
+                counts[64 + Long.numberOfTrailingZeros(bits)]++;
+        }
+    }
+
+    /*
+     * Empty squares, low and high half, from which a piece of the player to move
+     * captures the opponent piece next to it in the given direction: the piece
+     * beyond is its own, a corner or the center. The board is shifted back from
+     * the sandwiching squares onto the captured pieces, then onto the landing
+     * squares. The king in or next to the center, which needs attackers on all
+     * sides, is left out.
+     */
+    private long getCaptureLandingsLo(int dir) {
+        int back = (dir + 2) % Coordinates.NUM_DIRECTIONS;
+        long hostileLo = getPlayerLo(turnPlayer) | RESTRICTED_LO;
+        long hostileHi = getPlayerHi(turnPlayer) | RESTRICTED_HI;
+        long enemyLo = getSandwichableLo() & shiftLo(hostileLo, hostileHi, back);
+        long enemyHi = getSandwichableHi() & shiftHi(hostileLo, hostileHi, back);
+        return shiftLo(enemyLo, enemyHi, back) & ~getOccupiedLo();
+    }
+
+    private long getCaptureLandingsHi(int dir) {
+        int back = (dir + 2) % Coordinates.NUM_DIRECTIONS;
+        long hostileLo = getPlayerLo(turnPlayer) | RESTRICTED_LO;
+        long hostileHi = getPlayerHi(turnPlayer) | RESTRICTED_HI;
+        long enemyLo = getSandwichableLo() & shiftLo(hostileLo, hostileHi, back);
+        long enemyHi = getSandwichableHi() & shiftHi(hostileLo, hostileHi, back);
+        return shiftHi(enemyLo, enemyHi, back) & ~getOccupiedHi();
+    }
+
+    // Opponent pieces captured by the sandwich rule, low and high half.
+    private long getSandwichableLo() {
+        long pieces = getPlayerLo(getOpponent());
+        return kingNeedsSurrounding() ? pieces & ~kingLo : pieces;
+    }
+
+    private long getSandwichableHi() {
+        long pieces = getPlayerHi(getOpponent());
+        return kingNeedsSurrounding() ? pieces & ~kingHi : pieces;
+    }
+
+    // Whether the king is an opponent piece that needs attackers on all sides.
+    private boolean kingNeedsSurrounding() {
+        return turnPlayer == MUSCOVITE && kingPosition != null && Coordinates.isCenterOrNeighborCenter(kingPosition);
+    }
+
+    /**
+     * Directions from newPos, as a bit mask, in which the player to move captures a
+     * piece by moving from oldPos to newPos. Only a piece next to the new position
+     * can be captured. This gives the same answer before and after the piece is
+     * moved on the board: oldPos is taken as empty, and newPos as holding the
+     * moving piece.
+     */
+    private int getCapturedDirections(Coord oldPos, Coord newPos) {
+        int capturedDirections = 0;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            Coord enemy = Coordinates.getNeighbor(newPos, dir);
+            if (enemy != null && isOpponentPieceAt(enemy)) {
                 boolean canCapture = true;
 
                 // If the opponent is a king, we need to check if its at the center or the
@@ -159,43 +378,80 @@ public class TablutBoardState extends BoardState {
                 // If it is, then it can only be captured on all 4 sides.
                 if (getPieceAt(enemy) == Piece.KING && Coordinates.isCenterOrNeighborCenter(kingPosition)) {
                     for (Coord possibleAlly : Coordinates.getNeighbors(enemy)) {
-                        if (getPieceAt(possibleAlly) != Piece.BLACK && !Coordinates.isCenter(possibleAlly)) {
+                        boolean ally = possibleAlly == newPos
+                                || (possibleAlly != oldPos && getPieceAt(possibleAlly) == Piece.BLACK);
+                        if (!ally && !Coordinates.isCenter(possibleAlly)) {
                             canCapture = false;
                             break;
                         }
                     }
                 } else { // Otherwise, check for the normal, sandwich-based capture rule.
-                    try {
-                        Coord sandwichCord = Coordinates.getSandwichCoord(newPos, enemy);
-                        canCapture = canCaptureWithCoord(sandwichCord);
-                    } catch (CoordinateDoesNotExistException e) {
-                        canCapture = false;
-                    }
+                    Coord sandwichCord = Coordinates.getSandwichCoord(newPos, dir);
+                    canCapture = sandwichCord != null && canCaptureWithCoord(sandwichCord, oldPos);
                 }
                 if (canCapture) {
-                    captured.add(enemy);
+                    capturedDirections |= 1 << dir;
                 }
             }
         }
+        return capturedDirections;
+    }
 
-        // Slaughter the captured enemies... like pigs. Or more like remove object
-        // memory addresses... same thing.
-        // Note, it is possible for multiple pieces to be captured at once, so we have a
-        // list of them.
-        for (Coord capturedCoord : captured) {
-            if (getPieceAt(capturedCoord) == Piece.KING) {
-                kingPosition = null;
-            } // the king has been captured!
-            getPlayerCoordSet(getOpponent()).remove(capturedCoord);
-            board[capturedCoord.x][capturedCoord.y] = Piece.EMPTY;
-        }
+    /**
+     * Takes back the last move made with makeMove, restoring the captured pieces,
+     * the king position, the turn player, the turn number and the winner.
+     */
+    public void unmakeMove(long undo) {
+        Coord oldPos = Coordinates.get((int) (undo & UNDO_SQUARE_MASK));
+        Coord newPos = Coordinates.get((int) ((undo >>> UNDO_TO_SHIFT) & UNDO_SQUARE_MASK));
 
-        // Update internal variables, winner, turn player, and turn number.
+        // Hand the turn back to the player who made the move.
+        turnPlayer = getOpponent();
         if (turnPlayer != FIRST_PLAYER) {
-            turnNumber += 1;
+            turnNumber -= 1;
         }
-        turnPlayer = getOpponent();
-        updateWinner(); // Check if anybody won and update internal variables if so.
+        winner = (int) (undo >>> UNDO_WINNER_SHIFT);
+
+        // Move the piece back.
+        Piece movingPiece = getPieceAt(newPos);
+        if (movingPiece == Piece.KING)
+            kingPosition = oldPos;
+        togglePiece(movingPiece, Coordinates.getIndex(newPos));
+        togglePiece(movingPiece, Coordinates.getIndex(oldPos));
+        hashKey ^= pieceKey(movingPiece, oldPos) ^ pieceKey(movingPiece, newPos) ^ SIDE_TO_MOVE_KEY;
+
+        // Bring the captured pieces back to life.
+        int capturedDirections = (int) (undo >>> UNDO_CAPTURES_SHIFT) & 0xF;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            if ((capturedDirections & (1 << dir)) == 0)
+                continue;
+            Coord capturedCoord = Coordinates.getNeighbor(newPos, dir);
+            Piece capturedPiece;
+            if (turnPlayer == SWEDE) {
+                capturedPiece = Piece.BLACK;
+            } else if ((undo & UNDO_KING_CAPTURED) != 0 && dir == ((undo >>> UNDO_KING_DIRECTION_SHIFT) & 0x3)) {
+                capturedPiece = Piece.KING;
+                kingPosition = capturedCoord;
+            } else {
+                capturedPiece = Piece.WHITE;
+            }
+            togglePiece(capturedPiece, Coordinates.getIndex(capturedCoord));
+            hashKey ^= pieceKey(capturedPiece, capturedCoord);
+        }
+    }
+
+    private static long pieceKey(Piece piece, Coord c) {
+        return PIECE_KEYS[piece.ordinal()][Coordinates.getIndex(c)];
+    }
+
+    // Computes the Zobrist key from scratch. Moves keep it up to date incrementally.
+    private long computeHashKey() {
+        long key = (turnPlayer == SWEDE) ? SIDE_TO_MOVE_KEY : 0;
+        for (Coord c : Coordinates.iterCoordinates()) {
+            if (!coordIsEmpty(c))
+                key ^= pieceKey(getPieceAt(c), c);
+        }
+        return key;
     }
 
     // Determines if a player has won by updating internal variable.
@@ -225,33 +481,154 @@ public class TablutBoardState extends BoardState {
      * desirable to select a subset of moves from specific positions.
      */
     public ArrayList<TablutMove> getAllLegalMoves() {
-        ArrayList<TablutMove> allMoves = new ArrayList<>();
-        for (Coord pos : getPlayerCoordSet()) {
-            allMoves.addAll(getLegalMovesForPosition(pos));
+        int[] moves = new int[MAX_LEGAL_MOVES];
+        int count = getAllLegalMoves(moves);
+        ArrayList<TablutMove> allMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            allMoves.add(TablutMove.fromPacked(moves[i]));
         }
         return allMoves;
     }
 
     /**
-     * Check if there are any legal moves for the player.
+     * Same moves as getAllLegalMoves, but packed with TablutMove.pack into the
+     * given buffer instead of allocating a list and a TablutMove per move. The
+     * buffer must hold at least MAX_LEGAL_MOVES entries. Returns the number of
+     * moves written.
      */
-    private boolean playerHasALegalMove(int player) {
-        for (Coord c : getPlayerCoordSet(player)) {
-            for (Coord neighbor : Coordinates.getNeighbors(c)) {
-                if (coordIsEmpty(neighbor)) {
-                    if (pieceIsAllowedAt(neighbor, getPieceAt(c))) {
-                        return true;
-                    }
-                    // Need another convoluted check just in case it is the center.
-                    if (Coordinates.isCenter(neighbor)) {
-                        int xDiff = neighbor.x - c.x;
-                        int yDiff = neighbor.y - c.y;
-                        if (coordIsEmpty(Coordinates.get(neighbor.x + xDiff, neighbor.y + yDiff)))
-                            return true;
+    public int getAllLegalMoves(int[] moves) {
+        int count = getKingMoves(moves, 0);
+        long emptyLo = ~getOccupiedLo(), emptyHi = ~getOccupiedHi() & HI_MASK;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            // Slide all the other pieces at once, a square per step, over the empty
+            // squares. Those that reach a square started offset squares back.
+            long lo = getSoldiersLo(), hi = getSoldiersHi();
+            for (int offset = DIRECTION_OFFSETS[dir];; offset += DIRECTION_OFFSETS[dir]) {
+                long nextLo = shiftLo(lo, hi, dir) & emptyLo;
+                hi = shiftHi(lo, hi, dir) & emptyHi;
+                lo = nextLo;
+                if ((lo | hi) == 0)
+                    break;
+                for (int half = 0; half < 2; half++) {
+                    long ends = (half == 0) ? lo & ~RESTRICTED_LO : hi & ~RESTRICTED_HI;
+                    for (; ends != 0; ends &= ends - 1) {
+                        int end = 64 * half + Long.numberOfTrailingZeros(ends);
+                        moves[count++] = TablutMove.pack(end - offset, end, turnPlayer);
                     }
                 }
             }
         }
+        return count;
+    }
+
+    // Packs the king's moves into moves from index count, if it is the player to
+    // move's, and returns the new count. Unlike the other pieces it may stop on
+    // the corners and the center.
+    private int getKingMoves(int[] moves, int count) {
+        if (turnPlayer != SWEDE || kingPosition == null)
+            return count;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            for (Coord end : Coordinates.getRay(kingPosition, dir)) {
+                if (!coordIsEmpty(end))
+                    break;
+                moves[count++] = TablutMove.pack(kingPosition, end, turnPlayer);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Packs into moves every legal move of the player to move that captures at
+     * least one piece, in no particular order, and returns how many there are.
+     * Only the squares next to opponent pieces are looked at, and only pieces in
+     * line with a capturing square are considered, so this is much cheaper than
+     * generating every move and testing it.
+     */
+    public int getCaptureMoves(int[] moves) {
+        // Squares a move captures by landing on, and squares next to the king in or
+        // beside the center, where it depends on which piece moves.
+        long captureLo = 0, captureHi = 0, surroundLo = 0, surroundHi = 0;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            captureLo |= getCaptureLandingsLo(dir);
+            captureHi |= getCaptureLandingsHi(dir);
+        }
+        if (kingNeedsSurrounding()) {
+            for (Coord landing : Coordinates.getNeighbors(kingPosition)) {
+                int index = Coordinates.getIndex(landing);
+                if (index < 64)
+                    surroundLo |= 1L << index;
+                else
+                    surroundHi |= 1L << index;
+            }
+            surroundLo &= ~captureLo & ~getOccupiedLo();
+            surroundHi &= ~captureHi & ~getOccupiedHi();
+        }
+
+        int count = 0;
+        for (long bits = captureLo; bits != 0; bits &= bits - 1)
+            count = getMovesTo(Coordinates.get(Long.numberOfTrailingZeros(bits)), moves, count);
+        for (long bits = captureHi; bits != 0; bits &= bits - 1)
+            count = getMovesTo(Coordinates.get(64 + Long.numberOfTrailingZeros(bits)), moves, count);
+        for (int pass = 0; pass < 2; pass++) {
+            for (long bits = (pass == 0) ? surroundLo : surroundHi; bits != 0; bits &= bits - 1) {
+                Coord end = Coordinates.get(64 * pass + Long.numberOfTrailingZeros(bits));
+                int first = count;
+                int last = getMovesTo(end, moves, count);
+                for (int i = first; i < last; i++) {
+                    if (getCapturedDirections(TablutMove.getPackedStart(moves[i]), end) != 0)
+                        moves[count++] = moves[i];
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Packs every legal move of the player to move that ends on the given square
+     * into moves, starting at index count, and returns the new count.
+     */
+    public int getMovesTo(Coord end, int[] moves, int count) {
+        if (!coordIsEmpty(end))
+            return count;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            // The first piece met looking out from the square is the only one that can
+            // reach it from that side.
+            for (Coord start : Coordinates.getRay(end, dir)) {
+                if (coordIsEmpty(start))
+                    continue;
+                Piece piece = getPieceAt(start);
+                if (getOwner(piece) == turnPlayer && pieceIsAllowedAt(end, piece))
+                    moves[count++] = TablutMove.pack(start, end, turnPlayer);
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check if there are any legal moves for the player. Any move goes through a
+     * neighboring square, so it is enough to shift the player's pieces one square
+     * in every direction and look for empty squares they may stop on, or the empty
+     * center with an empty square beyond it.
+     */
+    private boolean playerHasALegalMove(int player) {
+        if (player == SWEDE && kingPosition != null) {
+            for (Coord neighbor : Coordinates.getNeighbors(kingPosition)) {
+                if (coordIsEmpty(neighbor))
+                    return true;
+            }
+        }
+        long emptyLo = ~getOccupiedLo(), emptyHi = ~getOccupiedHi() & HI_MASK;
+        long lo = (player == MUSCOVITE) ? blackLo : whiteLo;
+        long hi = (player == MUSCOVITE) ? blackHi : whiteHi;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            long stepLo = shiftLo(lo, hi, dir) & emptyLo;
+            long stepHi = shiftHi(lo, hi, dir) & emptyHi;
+            if ((stepLo & ~RESTRICTED_LO) != 0 || (stepHi & ~RESTRICTED_HI) != 0)
+                return true;
+            if ((stepLo & CENTER_BIT) != 0 && (shiftLo(CENTER_BIT, 0, dir) & emptyLo) != 0)
+                return true;
+        }
         return false;
     }
 
@@ -266,53 +643,34 @@ public class TablutBoardState extends BoardState {
 
         // Check that the piece being requested actually belongs to the player.
         Piece piece = getPieceAt(start);
-        if (piecesToPlayer.get(piece) != turnPlayer) {
+        if (getOwner(piece) != turnPlayer) {
             return legalMoves;
         }
 
-        // Iterate along 4 directions.
-        List<Coord> goodCoords = new ArrayList<>();
-        goodCoords.addAll(getLegalCoordsInDirection(start, -1, 0)); // move in -x direction
-        goodCoords.addAll(getLegalCoordsInDirection(start, 0, -1)); // move in -y direction
-        goodCoords.addAll(getLegalCoordsInDirection(start, 1, 0)); // move in +x direction
-        goodCoords.addAll(getLegalCoordsInDirection(start, 0, 1)); // move in +y direction
-
         /*
-         * Add the real moves now. We do not call isLegal here; this is because we
-         * efficiently enforce legality by only adding those that are legal. This makes
-         * for a more efficient method so people aren't slowed down by just figuring out
-         * what they can do.
+         * Walk along the 4 directions until a piece blocks the way, adding the real
+         * moves as we go. We do not call isLegal here; this is because we efficiently
+         * enforce legality by only adding those that are legal. This makes for a more
+         * efficient method so people aren't slowed down by just figuring out what they
+         * can do.
          */
-        for (Coord end : goodCoords) {
-            if (pieceIsAllowedAt(end, piece)) {// only king moves to corner or center, so need to check.
-                legalMoves.add(new TablutMove(start, end, this.turnPlayer));
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            for (Coord end : Coordinates.getRay(start, dir)) {
+                if (!coordIsEmpty(end))
+                    break;
+                if (pieceIsAllowedAt(end, piece)) {// only king moves to corner or center, so need to check.
+                    legalMoves.add(new TablutMove(start, end, this.turnPlayer));
+                }
             }
         }
         return legalMoves;
     }
 
-    private List<Coord> getLegalCoordsInDirection(Coord start, int x, int y) {
-        ArrayList<Coord> coords = new ArrayList<>();
-        assert (!(x != 0 && y != 0));
-        int startPos = (x != 0) ? start.x : start.y; // starting at x or y
-        int incr = (x != 0) ? x : y; // incrementing the x or y value
-        int endIdx = (incr == 1) ? BOARD_SIZE - 1 : 0; // moving in the 0 or 8 direction
-
-        for (int i = startPos + incr; incr * i <= endIdx; i += incr) { // increasing/decreasing functionality
-            // new coord is an x coord change or a y coord change
-            Coord coord = (x != 0) ? Coordinates.get(i, start.y) : Coordinates.get(start.x, i);
-            if (coordIsEmpty(coord)) {
-                coords.add(coord);
-            } else {
-                break;
-            }
-        }
-        return coords;
-    }
-
-    // Determines whether or not this coord is a valid coord we can sandwich with.
-    private boolean canCaptureWithCoord(Coord c) {
-        return Coordinates.isCorner(c) || Coordinates.isCenter(c) || piecesToPlayer.get(getPieceAt(c)) == turnPlayer;
+    // Determines whether or not this coord is a valid coord we can sandwich with,
+    // given the square the moving piece left.
+    private boolean canCaptureWithCoord(Coord c, Coord vacated) {
+        return Coordinates.isCorner(c) || Coordinates.isCenter(c)
+                || (c != vacated && getOwner(getPieceAt(c)) == turnPlayer);
     }
 
     // Returns all of the coordinates of pieces belonging to the current player.
@@ -320,22 +678,106 @@ public class TablutBoardState extends BoardState {
         if (turnPlayer != MUSCOVITE && turnPlayer != SWEDE) {
             return null;
         }
-        return new HashSet<Coord>(getPlayerCoordSet(turnPlayer)); // Copy the set so no funny business.
+        return getPlayerCoordSet(turnPlayer);
     }
 
     public HashSet<Coord> getOpponentPieceCoordinates() {
         if (turnPlayer != MUSCOVITE && turnPlayer != SWEDE) {
             return null;
         }
-        return new HashSet<Coord>(getPlayerCoordSet(getOpponent())); // Copy the set so no funny business.
+        return getPlayerCoordSet(getOpponent());
     }
 
-    private HashSet<Coord> getPlayerCoordSet() {
-        return getPlayerCoordSet(turnPlayer);
+    private HashSet<Coord> getPlayerCoordSet(int player) {
+        HashSet<Coord> coords = new HashSet<>();
+        for (long bits = getPlayerLo(player); bits != 0; bits &= bits - 1)
+            coords.add(Coordinates.get(Long.numberOfTrailingZeros(bits)));
+        for (long bits = getPlayerHi(player); bits != 0; bits &= bits - 1)
+            coords.add(Coordinates.get(64 + Long.numberOfTrailingZeros(bits)));
+        return coords;
     }
 
-    private HashSet<Coord> getPlayerCoordSet(int player) {
-        return (player == MUSCOVITE) ? muscoviteCoords : swedeCoords;
+    /* ----- Bitboard helpers. ----- */
+
+    // The squares of the player's pieces, low and high half.
+    private long getPlayerLo(int player) {
+        return (player == MUSCOVITE) ? blackLo : whiteLo | kingLo;
+    }
+
+    private long getPlayerHi(int player) {
+        return (player == MUSCOVITE) ? blackHi : whiteHi | kingHi;
+    }
+
+    // The squares of the player to move's pieces other than the king.
+    private long getSoldiersLo() {
+        return (turnPlayer == MUSCOVITE) ? blackLo : whiteLo;
+    }
+
+    private long getSoldiersHi() {
+        return (turnPlayer == MUSCOVITE) ? blackHi : whiteHi;
+    }
+
+    private long getOccupiedLo() {
+        return blackLo | whiteLo | kingLo;
+    }
+
+    private long getOccupiedHi() {
+        return blackHi | whiteHi | kingHi;
+    }
+
+    // Low half of the squares (lo, hi) moved one square in the given direction.
+    // Squares moved off the board are dropped.
+    private static long shiftLo(long lo, long hi, int direction) {
+        switch (direction) {
+        case Coordinates.MINUS_X:
+            return (lo >>> BOARD_SIZE) | (hi << (64 - BOARD_SIZE));
+        case Coordinates.MINUS_Y:
+            return ((lo >>> 1) | (hi << 63)) & NOT_LAST_COLUMN_LO;
+        case Coordinates.PLUS_X:
+            return lo << BOARD_SIZE;
+        default:
+            return (lo << 1) & NOT_FIRST_COLUMN_LO;
+        }
+    }
+
+    // High half of the squares (lo, hi) moved one square in the given direction.
+    private static long shiftHi(long lo, long hi, int direction) {
+        switch (direction) {
+        case Coordinates.MINUS_X:
+            return hi >>> BOARD_SIZE;
+        case Coordinates.MINUS_Y:
+            return (hi >>> 1) & NOT_LAST_COLUMN_HI;
+        case Coordinates.PLUS_X:
+            return ((hi << BOARD_SIZE) | (lo >>> (64 - BOARD_SIZE))) & HI_MASK;
+        default:
+            return ((hi << 1) | (lo >>> 63)) & NOT_FIRST_COLUMN_HI;
+        }
+    }
+
+    // Adds the piece on an empty square, or removes it from its square.
+    private void togglePiece(Piece piece, int index) {
+        long bit = 1L << index;
+        if (index < 64) {
+            if (piece == Piece.BLACK)
+                blackLo ^= bit;
+            else if (piece == Piece.WHITE)
+                whiteLo ^= bit;
+            else
+                kingLo ^= bit;
+        } else {
+            if (piece == Piece.BLACK)
+                blackHi ^= bit;
+            else if (piece == Piece.WHITE)
+                whiteHi ^= bit;
+            else
+                kingHi ^= bit;
+        }
+    }
+
+    // Places a piece on an empty square while a position is set up.
+    private void putPiece(Piece piece, int x, int y) {
+        if (getPieceAt(x, y) == Piece.EMPTY)
+            togglePiece(piece, x * BOARD_SIZE + y);
     }
 
     public boolean isLegal(TablutMove move) {
@@ -349,24 +791,23 @@ public class TablutBoardState extends BoardState {
         Piece piece = getPieceAt(start); // this will check if the position is on the board
 
         // Check that the piece being requested actually belongs to the player.
-        if (piecesToPlayer.get(piece) != turnPlayer)
+        if (getOwner(piece) != turnPlayer)
             return false;
 
         // Next, make sure move doesn't end on a piece.
         if (!coordIsEmpty(end))
             return false;
 
-        // Next, make sure the move is actually a move.
-        int coordDiff = start.maxDifference(end);
-        if (coordDiff == 0)
-            return false;
-
-        // Now for the actual game logic. First we make sure it is moving like a rook.
-        if (!(start.x == end.x || start.y == end.y))
+        // Next, make sure the move is actually a move, and that it is moving like a
+        // rook.
+        int direction = Coordinates.getDirection(start, end);
+        if (direction < 0)
             return false;
 
         // Now we make sure it isn't moving through any other pieces.
-        for (Coord throughCoordinate : start.getCoordsBetween(end)) {
+        for (Coord throughCoordinate : Coordinates.getRay(start, direction)) {
+            if (throughCoordinate == end)
+                break;
             if (!coordIsEmpty(throughCoordinate))
                 return false;
         }
@@ -382,23 +823,41 @@ public class TablutBoardState extends BoardState {
 
     /* ----- Useful helper functions. ----- */
     public Piece getPieceAt(int xPosition, int yPosition) {
-        return board[xPosition][yPosition];
+        int index = xPosition * BOARD_SIZE + yPosition;
+        long bit = 1L << index;
+        if (index < 64) {
+            if ((blackLo & bit) != 0)
+                return Piece.BLACK;
+            if ((whiteLo & bit) != 0)
+                return Piece.WHITE;
+            return ((kingLo & bit) != 0) ? Piece.KING : Piece.EMPTY;
+        }
+        if ((blackHi & bit) != 0)
+            return Piece.BLACK;
+        if ((whiteHi & bit) != 0)
+            return Piece.WHITE;
+        return ((kingHi & bit) != 0) ? Piece.KING : Piece.EMPTY;
     }
 
     public Piece getPieceAt(Coord position) {
         return getPieceAt(position.x, position.y);
     }
 
+    private static int getOwner(Piece piece) {
+        return PIECE_OWNERS[piece.ordinal()];
+    }
+
     public boolean turnPlayerCanMoveFrom(Coord position) {
-        return piecesToPlayer.get(getPieceAt(position)) == turnPlayer;
+        return getOwner(getPieceAt(position)) == turnPlayer;
     }
 
     public boolean isOpponentPieceAt(Coord position) {
-        return !(coordIsEmpty(position)) && piecesToPlayer.get(getPieceAt(position)) != turnPlayer;
+        return !(coordIsEmpty(position)) && getOwner(getPieceAt(position)) != turnPlayer;
     }
 
     public boolean coordIsEmpty(Coord c) {
-        return getPieceAt(c) == Piece.EMPTY;
+        int index = Coordinates.getIndex(c);
+        return (((index < 64) ? getOccupiedLo() : getOccupiedHi()) & (1L << index)) == 0;
     }
 
     public int getOpponent() {
@@ -406,13 +865,30 @@ public class TablutBoardState extends BoardState {
     }
 
     public int getNumberPlayerPieces(int player) {
-        return getPlayerCoordSet(player).size();
+        return Long.bitCount(getPlayerLo(player)) + Long.bitCount(getPlayerHi(player));
     }
 
     public Coord getKingPosition() {
         return kingPosition;
     }
 
+    /**
+     * 64-bit Zobrist key of the piece placement and the side to move. Equal
+     * positions have equal keys, so this can be used to index search caches.
+     */
+    public long getHashKey() {
+        return hashKey;
+    }
+
+    /**
+     * Same as getHashKey, but also distinguishes positions by which group of
+     * TURN_BUCKET_SIZE turns they were reached in. Useful when results depend on
+     * how close the game is to the MAX_TURNS draw.
+     */
+    public long getHashKeyWithTurnBucket() {
+        return hashKey ^ TURN_BUCKET_KEYS[Math.min(turnNumber / TURN_BUCKET_SIZE, TURN_BUCKET_KEYS.length - 1)];
+    }
+
     // If its a king, it can move anywhere. Otherwise, make sure it isn't trying to
     // move to the center or a corner.
     private boolean pieceIsAllowedAt(Coord pos, Piece piece) {
@@ -462,6 +938,136 @@ public class TablutBoardState extends BoardState {
         return moves.get(rand.nextInt(moves.size()));
     }
 
+    /**
+     * Draws a uniformly random legal move, packed with TablutMove.pack, without
+     * building the move list: the moves are counted first, then the walk stops at
+     * the chosen one. The random generator belongs to the caller so that playouts
+     * can reuse one per thread.
+     */
+    public int sampleRandomMove(SplittableRandom random) {
+        int chosen = random.nextInt(countLegalMoves());
+        if (turnPlayer == SWEDE && kingPosition != null) {
+            for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+                for (Coord end : Coordinates.getRay(kingPosition, dir)) {
+                    if (!coordIsEmpty(end))
+                        break;
+                    if (chosen-- == 0)
+                        return TablutMove.pack(kingPosition, end, turnPlayer);
+                }
+            }
+        }
+        // The other pieces slide as in getAllLegalMoves, skipping whole steps by
+        // their move counts.
+        long emptyLo = ~getOccupiedLo(), emptyHi = ~getOccupiedHi() & HI_MASK;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            long lo = getSoldiersLo(), hi = getSoldiersHi();
+            for (int offset = DIRECTION_OFFSETS[dir];; offset += DIRECTION_OFFSETS[dir]) {
+                long nextLo = shiftLo(lo, hi, dir) & emptyLo;
+                hi = shiftHi(lo, hi, dir) & emptyHi;
+                lo = nextLo;
+                if ((lo | hi) == 0)
+                    break;
+                for (int half = 0; half < 2; half++) {
+                    long ends = (half == 0) ? lo & ~RESTRICTED_LO : hi & ~RESTRICTED_HI;
+                    int count = Long.bitCount(ends);
+                    if (chosen >= count) {
+                        chosen -= count;
+                        continue;
+                    }
+                    for (; chosen > 0; chosen--)
+                        ends &= ends - 1;
+                    int end = 64 * half + Long.numberOfTrailingZeros(ends);
+                    return TablutMove.pack(end - offset, end, turnPlayer);
+                }
+            }
+        }
+        throw new IllegalStateException("Move count changed while sampling.");
+    }
+
+    /**
+     * Draws a random legal move with probability proportional to the weight the
+     * policy gives it, in a single pass over the moves and without building the
+     * move list. Returns the move packed with TablutMove.pack.
+     */
+    public int sampleRandomMove(SplittableRandom random, MovePolicy policy) {
+        int chosen = -1;
+        int totalWeight = 0;
+        if (turnPlayer == SWEDE && kingPosition != null) {
+            for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+                for (Coord end : Coordinates.getRay(kingPosition, dir)) {
+                    if (!coordIsEmpty(end))
+                        break;
+                    int move = TablutMove.pack(kingPosition, end, turnPlayer);
+                    int weight = policy.weight(this, move);
+                    if (weight <= 0)
+                        continue;
+                    // Keep each move with probability weight / (weight seen so far).
+                    totalWeight += weight;
+                    if (random.nextInt(totalWeight) < weight)
+                        chosen = move;
+                }
+            }
+        }
+        long emptyLo = ~getOccupiedLo(), emptyHi = ~getOccupiedHi() & HI_MASK;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            long lo = getSoldiersLo(), hi = getSoldiersHi();
+            for (int offset = DIRECTION_OFFSETS[dir];; offset += DIRECTION_OFFSETS[dir]) {
+                long nextLo = shiftLo(lo, hi, dir) & emptyLo;
+                hi = shiftHi(lo, hi, dir) & emptyHi;
+                lo = nextLo;
+                if ((lo | hi) == 0)
+                    break;
+                for (int half = 0; half < 2; half++) {
+                    long ends = (half == 0) ? lo & ~RESTRICTED_LO : hi & ~RESTRICTED_HI;
+                    for (; ends != 0; ends &= ends - 1) {
+                        int end = 64 * half + Long.numberOfTrailingZeros(ends);
+                        int move = TablutMove.pack(end - offset, end, turnPlayer);
+                        int weight = policy.weight(this, move);
+                        if (weight <= 0)
+                            continue;
+                        totalWeight += weight;
+                        if (random.nextInt(totalWeight) < weight)
+                            chosen = move;
+                    }
+                }
+            }
+        }
+        return (chosen < 0) ? sampleRandomMove(random) : chosen;
+    }
+
+    // Number of legal moves of the player to move.
+    private int countLegalMoves() {
+        int count = getKingMoveCount();
+        long emptyLo = ~getOccupiedLo(), emptyHi = ~getOccupiedHi() & HI_MASK;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            long lo = getSoldiersLo(), hi = getSoldiersHi();
+            while (true) {
+                long nextLo = shiftLo(lo, hi, dir) & emptyLo;
+                hi = shiftHi(lo, hi, dir) & emptyHi;
+                lo = nextLo;
+                if ((lo | hi) == 0)
+                    break;
+                count += Long.bitCount(lo & ~RESTRICTED_LO) + Long.bitCount(hi & ~RESTRICTED_HI);
+            }
+        }
+        return count;
+    }
+
+    // Number of legal moves of the king, if it is the player to move's.
+    private int getKingMoveCount() {
+        if (turnPlayer != SWEDE || kingPosition == null)
+            return 0;
+        int count = 0;
+        for (int dir = 0; dir < Coordinates.NUM_DIRECTIONS; dir++) {
+            for (Coord end : Coordinates.getRay(kingPosition, dir)) {
+                if (!coordIsEmpty(end))
+                    break;
+                count++;
+            }
+        }
+        return count;
+    }
+
     /*** Debugging functionality is found below. ***/
 
     // Useful method to show the board.
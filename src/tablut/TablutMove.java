@@ -15,6 +15,15 @@ public class TablutMove extends Move {
     private int yEnd = -1;
     private boolean fromBoard = false;
 
+    /*
+     * Moves can also be packed into a single int, which is how search code passes
+     * them around without allocating: the start square index in the lowest 7 bits,
+     * the end square index in the next 7, and the player in the bit above those.
+     */
+    private static final int PACKED_SQUARE_MASK = 0x7F;
+    private static final int PACKED_END_SHIFT = 7;
+    private static final int PACKED_PLAYER_SHIFT = 14;
+
     /* Constructors */
     public TablutMove(Coord start, Coord end, int playerId) {
         this(start.x, start.y, end.x, end.y, playerId);
@@ -50,6 +59,36 @@ public class TablutMove extends Move {
         return Coordinates.get(this.xEnd, this.yEnd);
     }
 
+    /* Packed representation. */
+    public static int pack(Coord start, Coord end, int playerId) {
+        return pack(Coordinates.getIndex(start), Coordinates.getIndex(end), playerId);
+    }
+
+    // Same as pack(Coord, Coord, int), for squares given by Coordinates.getIndex.
+    public static int pack(int start, int end, int playerId) {
+        return start | (end << PACKED_END_SHIFT) | (playerId << PACKED_PLAYER_SHIFT);
+    }
+
+    public int toPacked() {
+        return pack(getStartPosition(), getEndPosition(), playerId);
+    }
+
+    public static TablutMove fromPacked(int packedMove) {
+        return new TablutMove(getPackedStart(packedMove), getPackedEnd(packedMove), getPackedPlayer(packedMove));
+    }
+
+    public static Coord getPackedStart(int packedMove) {
+        return Coordinates.get(packedMove & PACKED_SQUARE_MASK);
+    }
+
+    public static Coord getPackedEnd(int packedMove) {
+        return Coordinates.get((packedMove >>> PACKED_END_SHIFT) & PACKED_SQUARE_MASK);
+    }
+
+    public static int getPackedPlayer(int packedMove) {
+        return packedMove >>> PACKED_PLAYER_SHIFT;
+    }
+
     public static String getPlayerName(int player) {
         if (player != TablutBoardState.MUSCOVITE && player != TablutBoardState.SWEDE)
             return "Illegal";